@@ -0,0 +1,68 @@
+package org.example.bench;
+
+import org.example.ChatRoom;
+import org.example.ClientManager;
+import org.example.ClientSession;
+import org.example.LineDecoder;
+import org.example.Message;
+import org.example.RoomHistory;
+import org.example.ServerConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    int members;
+
+    private ClientManager clientManager;
+    private ChatRoom room;
+    private ClientSession sender;
+    private Message message;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws IOException {
+        ServerConfig config = new ServerConfig(0, members);
+        clientManager = new ClientManager(config);
+        room = new ChatRoom("bench", "bench", members,
+                new RoomHistory(config.getHistorySize(), config.getHistoryMaxBytesPerRoom(), new AtomicLong(), Long.MAX_VALUE));
+
+        InMemoryOwner owner = new InMemoryOwner(blackhole);
+        for (int i = 0; i < members; i++) {
+            ClientSession session = new ClientSession(null, owner, new LineDecoder(1024, clientManager.getBufferPool()), clientManager.createOutboundQueue());
+            clientManager.addClient(session);
+            clientManager.setUsername(session, "user" + i);
+            room.addMember(session);
+            if (i == 0) {
+                sender = session;
+            }
+        }
+
+        // Сообщение разбирается тем же декодером, что и на сервере, и живёт до конца замера
+        ByteBuffer line = ByteBuffer.wrap("MSG:привет всем в комнате\n".getBytes(StandardCharsets.UTF_8));
+        new LineDecoder(1024, clientManager.getBufferPool()).decode(line, msg -> {
+            message = new Message(msg.getType(), msg.getData());
+        });
+    }
+
+    @Benchmark
+    public void chatFanOut() {
+        clientManager.sendToRoomWithColor(sender, room, message);
+    }
+
+    @Benchmark
+    public void systemFanOut() {
+        clientManager.sendToRoom(room, "SYSTEM:user0 вошёл в комнату");
+    }
+}
@@ -0,0 +1,39 @@
+package org.example.bench;
+
+import org.example.ClientSession;
+import org.example.PooledBuffer;
+import org.example.SessionOwner;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+// Владелец сессий без сокетов: принятые кадры сразу уходят в Blackhole и возвращаются в пул
+public class InMemoryOwner implements SessionOwner {
+    private final Blackhole blackhole;
+
+    public InMemoryOwner(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
+
+    @Override
+    public boolean inEventLoop() {
+        return true;
+    }
+
+    @Override
+    public void send(ClientSession client, PooledBuffer frame) {
+        blackhole.consume(frame.buffer().duplicate());
+        frame.release();
+    }
+
+    @Override
+    public void send(List<ClientSession> clients, PooledBuffer frame) {
+        for (ClientSession client : clients) {
+            send(client, frame);
+        }
+    }
+
+    @Override
+    public void close(ClientSession client) {
+    }
+}
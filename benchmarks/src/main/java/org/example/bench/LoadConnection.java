@@ -0,0 +1,37 @@
+package org.example.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+// Состояние одного имитируемого клиента; принадлежит одному LoadWorker
+public class LoadConnection {
+    final int id;
+    final String room;
+    final SocketChannel channel;
+    SelectionKey key;
+
+    // Незаконченная строка из предыдущего чтения
+    final byte[] line;
+    int lineLength;
+
+    // Что не ушло в сокет сразу
+    ByteBuffer pending;
+
+    boolean connected;
+    int setupReplies;
+    boolean joined;
+    boolean failed;
+    long nextSendNanos;
+
+    LoadConnection(int id, String room, SocketChannel channel, int maxLine) {
+        this.id = id;
+        this.room = room;
+        this.channel = channel;
+        this.line = new byte[maxLine];
+    }
+
+    boolean hasPending() {
+        return pending != null && pending.hasRemaining();
+    }
+}
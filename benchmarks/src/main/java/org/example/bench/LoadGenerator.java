@@ -0,0 +1,155 @@
+package org.example.bench;
+
+import org.HdrHistogram.Histogram;
+import org.example.Server;
+import org.example.ServerConfig;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+// Нагрузочный генератор без консольного ввода:
+// java -cp target/benchmarks.jar org.example.bench.LoadGenerator --clients=10000 --rooms=500 --rate=2
+public class LoadGenerator {
+    public static void main(String[] args) throws Exception {
+        LoadOptions options = LoadOptions.parse(args);
+
+        Server server = null;
+        if (options.port == 0) {
+            server = startEmbeddedServer(options);
+        }
+
+        LoadRun run = new LoadRun();
+        LoadWorker[] workers = new LoadWorker[options.selectors];
+        Thread[] threads = new Thread[workers.length];
+        for (int w = 0; w < workers.length; w++) {
+            int count = options.clients / workers.length + (w < options.clients % workers.length ? 1 : 0);
+            int[] ids = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = w + i * workers.length;
+            }
+            workers[w] = new LoadWorker(options, run, ids);
+            threads[w] = new Thread(workers[w], "load-selector-" + w);
+            threads[w].start();
+        }
+
+        System.out.println("Подключение " + options.clients + " клиентов к " + options.host + ":" + options.port
+                + ", комнат " + options.rooms + " по " + options.fanOut() + " участников");
+        long setupStart = System.nanoTime();
+        long setupDeadline = setupStart + options.setupTimeoutSeconds * 1_000_000_000L;
+        while (run.getJoined() + run.getFailed() < options.clients && System.nanoTime() < setupDeadline) {
+            Thread.sleep(100);
+        }
+        System.out.printf("В комнатах: %d, не удалось: %d, за %.1f с%n",
+                run.getJoined(), run.getFailed(), (System.nanoTime() - setupStart) / 1e9);
+
+        long start = System.nanoTime() + options.warmupSeconds * 1_000_000_000L;
+        long end = start + options.durationSeconds * 1_000_000_000L;
+        run.openWindow(start, end);
+        run.startSending();
+
+        // Пропускная способность: одна точка в гистограмме на каждую секунду замера
+        Histogram throughput = new Histogram(3);
+        sleepUntil(start);
+        long previous = run.getDelivered();
+        for (int s = 0; s < options.durationSeconds; s++) {
+            sleepUntil(start + (s + 1) * 1_000_000_000L);
+            long now = run.getDelivered();
+            throughput.recordValue(now - previous);
+            previous = now;
+        }
+
+        // Даём дойти сообщениям, отправленным в конце окна
+        Thread.sleep(2000);
+        run.stop();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (server != null) {
+            server.stop();
+        }
+
+        report(options, workers, throughput);
+    }
+
+    private static Server startEmbeddedServer(LoadOptions options) throws IOException, InterruptedException {
+        try (ServerSocket probe = new ServerSocket(0)) {
+            options.port = probe.getLocalPort();
+        }
+
+        ServerConfig config = new ServerConfig(options.port, options.clients);
+        config.setRoomCapacity(options.fanOut());
+        config.setWorkerThreads(options.serverWorkers);
+        config.setExecutionMode(options.serverMode);
+        // Измеряем рассылку, а не ограничитель: --rate выше лимитов иначе упёрся бы в них
+        config.setClientMessagesPerSecond(0);
+        config.setRoomMessagesPerSecond(0);
+
+        Server server = new Server(config);
+        Thread thread = new Thread(() -> {
+            try {
+                server.startServer();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "embedded-server");
+        thread.setDaemon(true);
+        thread.start();
+
+        // Ждём, пока сервер начнёт принимать соединения
+        for (int attempt = 0; ; attempt++) {
+            try (Socket ignored = new Socket(options.host, options.port)) {
+                return server;
+            } catch (IOException e) {
+                if (attempt == 100) {
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private static void report(LoadOptions options, LoadWorker[] workers, Histogram throughput) throws IOException {
+        Histogram latency = new Histogram(3);
+        long sent = 0;
+        long delivered = 0;
+        long dropped = 0;
+        long errors = 0;
+        for (LoadWorker worker : workers) {
+            latency.add(worker.latency);
+            sent += worker.sent;
+            delivered += worker.delivered;
+            dropped += worker.droppedSends;
+            errors += worker.errors;
+        }
+
+        double seconds = options.durationSeconds;
+        long expected = sent * options.fanOut();
+        System.out.println();
+        System.out.printf("Отправлено:   %d (%.0f сообщ/с), не отправлено из-за очереди: %d%n", sent, sent / seconds, dropped);
+        System.out.printf("Доставлено:   %d (%.0f сообщ/с), ожидалось около %d%n", delivered, delivered / seconds, expected);
+        System.out.printf("Ошибки:       %d%n", errors);
+        System.out.printf("Доставок в секунду: p50=%d min=%d max=%d%n",
+                throughput.getValueAtPercentile(50), throughput.getMinValue(), throughput.getMaxValue());
+        System.out.printf("Задержка, мс: p50=%.3f p99=%.3f p999=%.3f max=%.3f%n",
+                latency.getValueAtPercentile(50) / 1000.0,
+                latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0,
+                latency.getMaxValue() / 1000.0);
+
+        if (options.histogramFile != null) {
+            try (PrintStream out = new PrintStream(options.histogramFile)) {
+                latency.outputPercentileDistribution(out, 1000.0);
+            }
+            System.out.println("Распределение задержек (мс): " + options.histogramFile);
+        }
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long left;
+        while ((left = deadline - System.nanoTime()) > 0) {
+            Thread.sleep(left / 1_000_000L, (int) (left % 1_000_000L));
+        }
+    }
+}
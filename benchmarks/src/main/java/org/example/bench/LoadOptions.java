@@ -0,0 +1,65 @@
+package org.example.bench;
+
+import org.example.ExecutionMode;
+
+// --ключ=значение, как у Server
+public class LoadOptions {
+    String host = "127.0.0.1";
+    // 0 - поднять Server в этом же процессе на свободном порту
+    int port = 0;
+    int clients = 1000;
+    int rooms = 100;
+    int selectors = 4;
+    double ratePerClient = 1.0;
+    int payloadBytes = 64;
+    int warmupSeconds = 5;
+    int durationSeconds = 30;
+    int setupTimeoutSeconds = 60;
+    String histogramFile = null;
+
+    // Для встроенного сервера
+    int serverWorkers = 0;
+    ExecutionMode serverMode = ExecutionMode.SELECTOR;
+
+    public static LoadOptions parse(String[] args) {
+        LoadOptions options = new LoadOptions();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq == -1) {
+                throw new IllegalArgumentException("Неизвестный аргумент: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+
+            switch (name) {
+                case "host": options.host = value; break;
+                case "port": options.port = Integer.parseInt(value); break;
+                case "clients": options.clients = Integer.parseInt(value); break;
+                case "rooms": options.rooms = Integer.parseInt(value); break;
+                case "selectors": options.selectors = Integer.parseInt(value); break;
+                case "rate": options.ratePerClient = Double.parseDouble(value); break;
+                case "payload": options.payloadBytes = Integer.parseInt(value); break;
+                case "warmup": options.warmupSeconds = Integer.parseInt(value); break;
+                case "duration": options.durationSeconds = Integer.parseInt(value); break;
+                case "setup-timeout": options.setupTimeoutSeconds = Integer.parseInt(value); break;
+                case "hgrm": options.histogramFile = value; break;
+                case "server-workers": options.serverWorkers = Integer.parseInt(value); break;
+                case "server-mode":
+                    options.serverMode = value.equalsIgnoreCase("virtual")
+                            ? ExecutionMode.VIRTUAL_THREADS : ExecutionMode.valueOf(value.toUpperCase());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестный аргумент: " + arg);
+            }
+        }
+        if (options.rooms < 1 || options.clients < 1 || options.selectors < 1) {
+            throw new IllegalArgumentException("clients, rooms и selectors должны быть больше нуля");
+        }
+        return options;
+    }
+
+    // Сколько клиентов в одной комнате - во столько соединений уходит каждое сообщение
+    int fanOut() {
+        return (clients + rooms - 1) / rooms;
+    }
+}
@@ -0,0 +1,72 @@
+package org.example.bench;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Общее для всех LoadWorker состояние запуска: фазы и окно замера
+public class LoadRun {
+    // Отличает свои сообщения от истории комнат, оставшейся от прошлых запусков
+    private final long id = System.currentTimeMillis() % 1_000_000_000L;
+    private final AtomicInteger joined = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final LongAdder delivered = new LongAdder();
+
+    private volatile boolean sending;
+    private volatile boolean stopped;
+    private volatile long windowStart = Long.MAX_VALUE;
+    private volatile long windowEnd = Long.MAX_VALUE;
+
+    public long getId() {
+        return id;
+    }
+
+    void joined() {
+        joined.incrementAndGet();
+    }
+
+    void failed() {
+        failed.incrementAndGet();
+    }
+
+    void delivered() {
+        delivered.increment();
+    }
+
+    public int getJoined() {
+        return joined.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public boolean isSending() {
+        return sending;
+    }
+
+    public void startSending() {
+        sending = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public void openWindow(long start, long end) {
+        windowEnd = end;
+        windowStart = start;
+    }
+
+    // Учитываются только сообщения, запланированные внутри окна замера
+    boolean inWindow(long scheduledAt) {
+        return scheduledAt >= windowStart && scheduledAt < windowEnd;
+    }
+}
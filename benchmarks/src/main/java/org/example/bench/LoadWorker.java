@@ -0,0 +1,363 @@
+package org.example.bench;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Один селектор на много соединений: подключение, сценарий входа в комнату, отправка по расписанию и приём
+public class LoadWorker implements Runnable {
+    private static final byte[] MSG = "MSG:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHAT = "CHAT:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JOINED = "JOINED:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] OK = "OK:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ERROR = "ERROR:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PING = "PING:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PONG = "PONG:\n".getBytes(StandardCharsets.US_ASCII);
+
+    // OK на подключение, OK на имя, ответ на CREATE, ответ на JOIN
+    private static final int SETUP_REPLIES = 4;
+    private static final int MAX_CONNECTING = 64;
+    private static final int MAX_PENDING = 64 * 1024;
+
+    private final LoadOptions options;
+    private final LoadRun run;
+    private final int[] ids;
+    private final Selector selector;
+    private final List<LoadConnection> connections;
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final byte[] padding;
+    private final long intervalNanos;
+
+    // Читаются главным потоком только после join()
+    final Histogram latency;
+    long sent;
+    long delivered;
+    long droppedSends;
+    long errors;
+
+    private int nextToOpen;
+    private int connecting;
+
+    public LoadWorker(LoadOptions options, LoadRun run, int[] ids) throws IOException {
+        this.options = options;
+        this.run = run;
+        this.ids = ids;
+        this.selector = Selector.open();
+        this.connections = new ArrayList<>(ids.length);
+        this.readBuffer = ByteBuffer.allocateDirect(64 * 1024);
+        this.writeBuffer = ByteBuffer.allocateDirect(8 * 1024);
+        this.padding = new byte[options.payloadBytes];
+        Arrays.fill(padding, (byte) 'x');
+        this.intervalNanos = options.ratePerClient > 0 ? (long) (1_000_000_000L / options.ratePerClient) : Long.MAX_VALUE;
+        this.latency = new Histogram(3);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!run.isStopped()) {
+                openConnections();
+                long now = System.nanoTime();
+                long wait = run.isSending() && options.ratePerClient > 0 ? sendDue(now) : 10_000_000L;
+                selector.select(Math.max(1, wait / 1_000_000L));
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (LoadConnection connection : connections) {
+                try {
+                    connection.channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // Подключаемся порциями: у сервера очередь accept по умолчанию короткая
+    private void openConnections() throws IOException {
+        while (nextToOpen < ids.length && connecting < MAX_CONNECTING) {
+            int id = ids[nextToOpen++];
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+            LoadConnection connection = new LoadConnection(id, "load-" + (id % options.rooms), channel, 16 * 1024);
+            connections.add(connection);
+            connecting++;
+
+            if (channel.connect(new InetSocketAddress(options.host, options.port))) {
+                connected(connection);
+            } else {
+                connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        LoadConnection connection = (LoadConnection) key.attachment();
+        try {
+            if (key.isConnectable()) {
+                connection.channel.finishConnect();
+                connected(connection);
+                return;
+            }
+            if (key.isReadable()) {
+                read(connection);
+            }
+            if (key.isValid() && key.isWritable()) {
+                flushPending(connection);
+            }
+        } catch (IOException e) {
+            fail(connection);
+        }
+    }
+
+    // Сценарий: имя, создание комнаты (если уже есть - придёт ERROR), вход в неё
+    private void connected(LoadConnection connection) throws IOException {
+        connecting--;
+        connection.connected = true;
+        if (connection.key == null) {
+            connection.key = connection.channel.register(selector, SelectionKey.OP_READ, connection);
+        } else {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        }
+        String setup = "USERNAME:load" + connection.id + "\n"
+                + "CREATE:" + connection.room + "\n"
+                + "JOIN:" + connection.room + "\n";
+        write(connection, setup.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void read(LoadConnection connection) throws IOException {
+        readBuffer.clear();
+        int n = connection.channel.read(readBuffer);
+        if (n == -1) {
+            fail(connection);
+            return;
+        }
+        readBuffer.flip();
+
+        byte[] line = connection.line;
+        while (readBuffer.hasRemaining()) {
+            byte b = readBuffer.get();
+            if (b == '\n') {
+                onLine(connection, line, connection.lineLength);
+                connection.lineLength = 0;
+            } else if (connection.lineLength < line.length) {
+                line[connection.lineLength++] = b;
+            }
+        }
+    }
+
+    private void onLine(LoadConnection connection, byte[] line, int length) throws IOException {
+        if (startsWith(line, length, CHAT)) {
+            onChat(line, length);
+            return;
+        }
+        // Без ответа молчащее соединение (--rate=0) сервер отключит по таймауту простоя
+        if (startsWith(line, length, PING)) {
+            write(connection, PONG);
+            return;
+        }
+        if (connection.joined) {
+            if (startsWith(line, length, ERROR)) {
+                errors++;
+            }
+            return;
+        }
+
+        boolean joined = startsWith(line, length, JOINED);
+        if (joined || startsWith(line, length, OK) || startsWith(line, length, ERROR)) {
+            connection.setupReplies++;
+        }
+        if (joined) {
+            connection.joined = true;
+            connection.nextSendNanos = System.nanoTime() + ThreadLocalRandom.current().nextLong(Math.min(intervalNanos, 1_000_000_000L));
+            run.joined();
+        } else if (connection.setupReplies >= SETUP_REPLIES) {
+            connection.failed = true;
+            run.failed();
+        }
+    }
+
+    // CHAT:имя:цвет:<запуск>.<время отправки> xxx...
+    private void onChat(byte[] line, int length) {
+        int colons = 0;
+        int i = 0;
+        while (i < length && colons < 3) {
+            if (line[i++] == ':') {
+                colons++;
+            }
+        }
+
+        long runId = 0;
+        while (i < length && line[i] != '.') {
+            runId = runId * 10 + (line[i++] - '0');
+        }
+        if (runId != run.getId()) {
+            // История комнаты от прошлых запусков
+            return;
+        }
+        i++;
+        long sentAt = 0;
+        while (i < length && line[i] >= '0' && line[i] <= '9') {
+            sentAt = sentAt * 10 + (line[i++] - '0');
+        }
+
+        if (run.inWindow(sentAt)) {
+            delivered++;
+            latency.recordValue(Math.max(0, (System.nanoTime() - sentAt) / 1000));
+        }
+        run.delivered();
+    }
+
+    // Отправка по расписанию; в сообщение пишется запланированное время, а не фактическое,
+    // чтобы задержки самого генератора не прятали задержки сервера (coordinated omission)
+    private long sendDue(long now) throws IOException {
+        long earliest = Long.MAX_VALUE;
+        for (int i = 0; i < connections.size(); i++) {
+            LoadConnection connection = connections.get(i);
+            if (!connection.joined || connection.failed) {
+                continue;
+            }
+            while (connection.nextSendNanos <= now) {
+                sendChat(connection, connection.nextSendNanos);
+                connection.nextSendNanos += intervalNanos;
+            }
+            earliest = Math.min(earliest, connection.nextSendNanos);
+        }
+        return earliest == Long.MAX_VALUE ? 10_000_000L : earliest - now;
+    }
+
+    private void sendChat(LoadConnection connection, long scheduledAt) throws IOException {
+        if (connection.hasPending() && connection.pending.remaining() > MAX_PENDING) {
+            droppedSends++;
+            return;
+        }
+        if (run.inWindow(scheduledAt)) {
+            sent++;
+        }
+
+        writeBuffer.clear();
+        writeBuffer.put(MSG);
+        putDecimal(writeBuffer, run.getId());
+        writeBuffer.put((byte) '.');
+        putDecimal(writeBuffer, scheduledAt);
+        writeBuffer.put((byte) ' ');
+        writeBuffer.put(padding);
+        writeBuffer.put((byte) '\n');
+        writeBuffer.flip();
+        write(connection, writeBuffer);
+    }
+
+    private void write(LoadConnection connection, byte[] data) throws IOException {
+        write(connection, ByteBuffer.wrap(data));
+    }
+
+    private void write(LoadConnection connection, ByteBuffer data) throws IOException {
+        try {
+            if (!connection.hasPending()) {
+                connection.channel.write(data);
+                if (!data.hasRemaining()) {
+                    return;
+                }
+            }
+            appendPending(connection, data);
+            connection.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException e) {
+            fail(connection);
+        }
+    }
+
+    private void appendPending(LoadConnection connection, ByteBuffer data) {
+        ByteBuffer pending = connection.pending;
+        if (pending == null) {
+            pending = ByteBuffer.allocate(Math.max(1024, data.remaining()));
+            pending.flip();
+        }
+        if (pending.capacity() - pending.remaining() < data.remaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.remaining() + data.remaining()));
+            larger.put(pending);
+            larger.flip();
+            pending = larger;
+        }
+        pending.compact();
+        pending.put(data);
+        pending.flip();
+        connection.pending = pending;
+    }
+
+    private void flushPending(LoadConnection connection) throws IOException {
+        connection.channel.write(connection.pending);
+        if (!connection.pending.hasRemaining()) {
+            connection.key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void fail(LoadConnection connection) {
+        if (connection.failed) {
+            return;
+        }
+        if (!connection.connected) {
+            connecting--;
+        }
+        connection.failed = true;
+        if (!connection.joined) {
+            run.failed();
+        } else {
+            errors++;
+        }
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void putDecimal(ByteBuffer buf, long value) {
+        int start = buf.position();
+        do {
+            buf.put((byte) ('0' + value % 10));
+            value /= 10;
+        } while (value > 0);
+        for (int i = start, j = buf.position() - 1; i < j; i++, j--) {
+            byte tmp = buf.get(i);
+            buf.put(i, buf.get(j));
+            buf.put(j, tmp);
+        }
+    }
+
+    private static boolean startsWith(byte[] line, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (line[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.bench;
+
+import org.example.BinaryDecoder;
+import org.example.BufferPool;
+import org.example.Command;
+import org.example.FrameDecoder;
+import org.example.LineDecoder;
+import org.example.Message;
+import org.example.MessageHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+    // Сколько команд приходит одним чтением
+    @Param({"1", "32"})
+    int pipelined;
+
+    private ByteBuffer text;
+    private ByteBuffer binary;
+    private String[] lines;
+    private FrameDecoder lineDecoder;
+    private FrameDecoder binaryDecoder;
+    private MessageHandler handler;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        String line = "MSG:привет, это обычное сообщение в чате";
+        byte[] payload = line.substring(4).getBytes(StandardCharsets.UTF_8);
+
+        text = ByteBuffer.allocate(8192);
+        binary = ByteBuffer.allocate(8192);
+        lines = new String[pipelined];
+        for (int i = 0; i < pipelined; i++) {
+            text.put((line + "\n").getBytes(StandardCharsets.UTF_8));
+            binary.putInt(1 + 2 + payload.length).put((byte) Command.MSG.getOpcode())
+                    .putShort((short) payload.length).put(payload);
+            lines[i] = line;
+        }
+        text.flip();
+        binary.flip();
+
+        BufferPool pool = new BufferPool(1 << 20, null);
+        lineDecoder = new LineDecoder(8192, pool);
+        binaryDecoder = new BinaryDecoder(8192, pool);
+        handler = msg -> {
+            blackhole.consume(msg.getType());
+            blackhole.consume(msg.getPayloadLength());
+        };
+    }
+
+    @Benchmark
+    public void textDecoder() throws IOException {
+        lineDecoder.decode(text.duplicate(), handler);
+    }
+
+    @Benchmark
+    public void binaryDecoder() throws IOException {
+        binaryDecoder.decode(binary.duplicate(), handler);
+    }
+
+    // Прежний путь: строка целиком, substring и новый Message на каждую команду
+    @Benchmark
+    public void legacyFromProtocol() {
+        for (String line : lines) {
+            Message msg = Message.fromProtocol(line);
+            blackhole.consume(msg.getType());
+            blackhole.consume(msg.getData());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.example.bench;
+
+import org.example.ChatRoom;
+import org.example.ClientManager;
+import org.example.ClientSession;
+import org.example.LineDecoder;
+import org.example.PooledBuffer;
+import org.example.RoomHistory;
+import org.example.ServerConfig;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomBenchmark {
+    @Param({"1000", "10000"})
+    int rooms;
+
+    @Param({"100"})
+    int members;
+
+    private ClientManager clientManager;
+    private ChatRoom room;
+    private ClientSession[] sessions;
+    private ClientSession visitor;
+    private String[] roomNames;
+    private int next;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        ServerConfig config = new ServerConfig(0, members);
+        clientManager = new ClientManager(config);
+        InMemoryOwner owner = new InMemoryOwner(blackhole);
+
+        roomNames = new String[rooms];
+        for (int i = 0; i < rooms; i++) {
+            roomNames[i] = "room-" + i;
+            clientManager.createRoom(roomNames[i]);
+        }
+
+        room = new ChatRoom("churn", "bench", members + 1,
+                new RoomHistory(0, 0, new AtomicLong(), 0));
+        sessions = new ClientSession[members];
+        for (int i = 0; i < members; i++) {
+            sessions[i] = new ClientSession(null, owner, new LineDecoder(1024, clientManager.getBufferPool()), clientManager.createOutboundQueue());
+            room.addMember(sessions[i]);
+        }
+
+        visitor = new ClientSession(null, owner, new LineDecoder(1024, clientManager.getBufferPool()), clientManager.createOutboundQueue());
+        clientManager.addClient(visitor);
+    }
+
+    // Вход и выход одного участника в комнате с members участниками
+    @Benchmark
+    public boolean membershipChurn() {
+        ClientSession session = sessions[next++ % members];
+        room.removeMember(session);
+        return room.addMember(session);
+    }
+
+    @Benchmark
+    public ClientSession[] memberSnapshot() {
+        return room.getMembers();
+    }
+
+    @Benchmark
+    public boolean joinRoom() {
+        return clientManager.joinRoom(visitor, roomNames[next++ % rooms]);
+    }
+
+    // Ничего не менялось: ответ берётся из кэша каталога
+    @Benchmark
+    public Object listRoomsCached() {
+        return released(clientManager.getRoomDirectory().listFrame(null));
+    }
+
+    // Вход в комнату сбрасывает кэш, и следующий LIST собирает список заново
+    @Benchmark
+    public Object listRoomsAfterJoin() {
+        clientManager.joinRoom(visitor, roomNames[next++ % rooms]);
+        return released(clientManager.getRoomDirectory().listFrame(null));
+    }
+
+    @Benchmark
+    public Object listRoomsPage() {
+        return released(clientManager.getRoomDirectory().page("room-1", 0, 50));
+    }
+
+    private static Object released(PooledBuffer frame) {
+        frame.release();
+        return frame;
+    }
+}
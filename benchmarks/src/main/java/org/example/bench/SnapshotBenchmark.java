@@ -0,0 +1,57 @@
+package org.example.bench;
+
+import org.example.ClientManager;
+import org.example.ServerConfig;
+import org.example.StateSnapshot;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// Запись снимка и загрузка при старте; каждая загрузка - в пустой ClientManager, как после перезапуска
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xms2g")
+public class SnapshotBenchmark {
+    @Param({"100000", "1000000"})
+    int rooms;
+
+    private ServerConfig config;
+    private ClientManager source;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = Files.createTempFile("chat-snapshot", ".bin");
+        config = new ServerConfig(0, 10);
+        config.setSnapshotFile(file.toString());
+
+        source = new ClientManager(config);
+        for (int i = 0; i < rooms; i++) {
+            source.createRoom("room-" + i);
+        }
+        new StateSnapshot(source, config).write();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void write() {
+        new StateSnapshot(source, config).write();
+    }
+
+    @Benchmark
+    public ClientManager load() {
+        ClientManager target = new ClientManager(config);
+        new StateSnapshot(target, config).load();
+        return target;
+    }
+}
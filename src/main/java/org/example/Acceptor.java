@@ -0,0 +1,60 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+
+public class Acceptor {
+    private final Selector selector;
+    private final ServerEventHandler[] workers;
+    private final AdmissionControl admission;
+    private int next;
+
+    public Acceptor(Selector selector, ServerEventHandler[] workers, AdmissionControl admission) {
+        this.selector = selector;
+        this.workers = workers;
+        this.admission = admission;
+    }
+
+    public void handleEvents() throws IOException {
+        if (selector.select(100) == 0) {
+            return;
+        }
+
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+            SelectionKey key = iterator.next();
+            iterator.remove();
+
+            if (key.isValid() && key.isAcceptable()) {
+                acceptClients((ServerSocketChannel) key.channel());
+            }
+        }
+    }
+
+    private void acceptClients(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel clientChannel;
+        while ((clientChannel = serverChannel.accept()) != null) {
+            // Отклонённое соединение до рабочих циклов не доходит
+            if (admission.admit(clientChannel)) {
+                selectWorker().register(clientChannel);
+            }
+        }
+    }
+
+    // Наименее загруженный цикл; при равной загрузке обходим по кругу
+    private ServerEventHandler selectWorker() {
+        ServerEventHandler best = null;
+        for (int i = 0; i < workers.length; i++) {
+            ServerEventHandler worker = workers[(next + i) % workers.length];
+            if (best == null || worker.getConnectionCount() < best.getConnectionCount()) {
+                best = worker;
+            }
+        }
+        next = (next + 1) % workers.length;
+        return best;
+    }
+}
@@ -0,0 +1,118 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Допуск подключений сразу после accept: лишнее соединение получает одну строку ERROR и
+// закрывается, не доходя до сессии, рабочих циклов и комнат. Допущенному выставляются опции сокета
+public class AdmissionControl {
+    private static final byte[] SERVER_FULL = "ERROR:Сервер переполнен\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ADDRESS_FULL = "ERROR:Слишком много подключений с вашего адреса\n".getBytes(StandardCharsets.UTF_8);
+
+    private final ServerConfig config;
+    private final Metrics metrics;
+    private final EventLog eventLog;
+    private final AtomicInteger total;
+    private final Map<InetAddress, Integer> perAddress;
+
+    public AdmissionControl(ServerConfig config, Metrics metrics, EventLog eventLog) {
+        this.config = config;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.total = new AtomicInteger();
+        this.perAddress = new ConcurrentHashMap<>();
+    }
+
+    // false - соединение отклонено и уже закрыто
+    public boolean admit(SocketChannel channel) {
+        InetAddress address = addressOf(channel);
+
+        if (total.incrementAndGet() > config.getMaxClient()) {
+            total.decrementAndGet();
+            reject(channel, address, SERVER_FULL, "лимит сервера");
+            return false;
+        }
+        if (config.getMaxClientsPerAddress() > 0 && address != null
+                && perAddress.merge(address, 1, Integer::sum) > config.getMaxClientsPerAddress()) {
+            releaseAddress(address);
+            total.decrementAndGet();
+            reject(channel, address, ADDRESS_FULL, "лимит адреса");
+            return false;
+        }
+
+        try {
+            configure(channel);
+        } catch (IOException e) {
+            release(address);
+            closeQuietly(channel);
+            return false;
+        }
+        return true;
+    }
+
+    // Для каждого допущенного соединения ровно один раз
+    public void release(InetAddress address) {
+        total.decrementAndGet();
+        if (config.getMaxClientsPerAddress() > 0 && address != null) {
+            releaseAddress(address);
+        }
+    }
+
+    public int getConnections() {
+        return total.get();
+    }
+
+    public static InetAddress addressOf(SocketChannel channel) {
+        if (channel == null) {
+            return null;
+        }
+        try {
+            SocketAddress address = channel.getRemoteAddress();
+            return address instanceof InetSocketAddress ? ((InetSocketAddress) address).getAddress() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void releaseAddress(InetAddress address) {
+        perAddress.computeIfPresent(address, (key, count) -> count == 1 ? null : count - 1);
+    }
+
+    private void configure(SocketChannel channel) throws IOException {
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, config.isTcpNoDelay());
+        if (config.getSocketSendBuffer() > 0) {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, config.getSocketSendBuffer());
+        }
+        if (config.getSocketReceiveBuffer() > 0) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, config.getSocketReceiveBuffer());
+        }
+    }
+
+    // Ответ короче буфера отправки свежего сокета, поэтому неблокирующей записи хватает
+    private void reject(SocketChannel channel, InetAddress address, byte[] reply, String reason) {
+        metrics.connectionRejected();
+        eventLog.log(EventType.CLIENT_REJECTED, address, reason);
+        try {
+            channel.configureBlocking(false);
+            channel.write(ByteBuffer.wrap(reply));
+        } catch (IOException ignored) {
+        }
+        closeQuietly(channel);
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
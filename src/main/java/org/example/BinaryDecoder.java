@@ -0,0 +1,96 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Двоичный режим выбирается первым байтом соединения (MAGIC).
+ * Кадр: int длина остатка, byte код команды (Command.getOpcode),
+ * затем необязательное поле: unsigned short длина, байты UTF-8.
+ */
+public class BinaryDecoder implements FrameDecoder {
+    public static final byte MAGIC = (byte) 0xB1;
+
+    private final BufferPool pool;
+    private final int maxFrameSize;
+    private final Message message;
+    // Хвост кадра, разрезанного между чтениями; буфер из пула держится, пока хвост не разобран
+    private PooledBuffer tail;
+
+    public BinaryDecoder(int maxFrameSize, BufferPool pool) {
+        this.pool = pool;
+        this.maxFrameSize = maxFrameSize;
+        this.message = new Message();
+    }
+
+    @Override
+    public void decode(ByteBuffer in, MessageHandler handler) throws IOException {
+        if (tail == null) {
+            readFrames(in, handler);
+            if (!in.hasRemaining()) {
+                return;
+            }
+            tail = pool.acquire(maxFrameSize);
+        }
+
+        ByteBuffer pending = tail.buffer();
+        while (in.hasRemaining()) {
+            int chunk = Math.min(in.remaining(), pending.remaining());
+            int oldLimit = in.limit();
+            in.limit(in.position() + chunk);
+            pending.put(in);
+            in.limit(oldLimit);
+
+            pending.flip();
+            readFrames(pending, handler);
+            pending.compact();
+        }
+        if (pending.position() == 0) {
+            release();
+        }
+    }
+
+    @Override
+    public void release() {
+        if (tail != null) {
+            tail.release();
+            tail = null;
+        }
+    }
+
+    private void readFrames(ByteBuffer buf, MessageHandler handler) throws IOException {
+        while (buf.remaining() >= 4) {
+            int length = buf.getInt(buf.position());
+            if (length < 1) {
+                throw new CorruptFrameException();
+            }
+            if (length > maxFrameSize - 4) {
+                throw new FrameTooLongException(maxFrameSize);
+            }
+            if (buf.remaining() < 4 + length) {
+                return;
+            }
+
+            int start = buf.position() + 4;
+            int end = start + length;
+            Command command = Command.fromOpcode(buf.get(start));
+            int fieldOffset = start + 1;
+            int fieldLength = 0;
+
+            if (end - fieldOffset > 0) {
+                if (end - fieldOffset < 2) {
+                    throw new CorruptFrameException();
+                }
+                fieldLength = buf.getShort(fieldOffset) & 0xFFFF;
+                fieldOffset += 2;
+                if (fieldOffset + fieldLength > end) {
+                    throw new CorruptFrameException();
+                }
+            }
+
+            buf.position(end);
+            message.wrap(command, buf, fieldOffset, fieldLength);
+            handler.onMessage(message);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package org.example;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Пул direct-буферов по классам размеров. Запись в канал из direct-буфера обходится без
+// промежуточной копии, которую JDK делает для heap-буферов. У каждого потока платформы
+// небольшой собственный кэш, остальное - в общей очереди с ограничением по памяти.
+// Буферы больше старшего класса выделяются без пула
+public class BufferPool {
+    private static final int[] SIZE_CLASSES = {256, 1024, 4096, 16 * 1024, 64 * 1024};
+    // Кэш потока для класса: не больше 64 буферов и не больше 256 КБ
+    private static final int LOCAL_CACHE_BYTES = 256 * 1024;
+    private static final int LOCAL_CACHE_SIZE = 64;
+
+    private final SharedQueue[] shared;
+    private final ThreadLocal<LocalCache[]> local;
+
+    private final Cleaner cleaner;
+    private final Consumer<String> leakListener;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder released = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final AtomicLong directBytes = new AtomicLong();
+    private final LongAdder leaks = new LongAdder();
+
+    // Если буфер собран сборщиком мусора, так и не вернувшись в пул, - это утечка
+    static final class LeakTracker implements Runnable {
+        private final BufferPool pool;
+        private final Throwable origin;
+        volatile boolean released;
+
+        LeakTracker(BufferPool pool, Throwable origin) {
+            this.pool = pool;
+            this.origin = origin;
+        }
+
+        @Override
+        public void run() {
+            if (!released) {
+                pool.leaks.increment();
+                StringWriter trace = new StringWriter();
+                origin.printStackTrace(new PrintWriter(trace));
+                pool.leakListener.accept(trace.toString());
+            }
+        }
+    }
+
+    // Свободные буферы одного класса, общие для всех потоков
+    private static final class SharedQueue {
+        final ConcurrentLinkedQueue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        final AtomicInteger count = new AtomicInteger();
+        final int max;
+
+        SharedQueue(int max) {
+            this.max = max;
+        }
+    }
+
+    // Кэш одного класса в одном потоке
+    private static final class LocalCache {
+        final ArrayDeque<ByteBuffer> buffers = new ArrayDeque<>();
+    }
+
+    // maxPooledBytes делится поровну между классами; leakListener не null включает поиск утечек
+    public BufferPool(long maxPooledBytes, Consumer<String> leakListener) {
+        int classes = SIZE_CLASSES.length;
+        this.shared = new SharedQueue[classes];
+        for (int i = 0; i < classes; i++) {
+            shared[i] = new SharedQueue((int) Math.min(Integer.MAX_VALUE, maxPooledBytes / classes / SIZE_CLASSES[i]));
+        }
+        this.local = ThreadLocal.withInitial(() -> {
+            LocalCache[] caches = new LocalCache[classes];
+            for (int i = 0; i < classes; i++) {
+                caches[i] = new LocalCache();
+            }
+            return caches;
+        });
+
+        this.leakListener = leakListener;
+        this.cleaner = leakListener == null ? null : Cleaner.create();
+    }
+
+    // Буфер с position = 0 и limit = size; ёмкость может быть больше
+    public PooledBuffer acquire(int size) {
+        acquired.increment();
+        int sizeClass = sizeClass(size);
+
+        ByteBuffer buffer = null;
+        if (sizeClass >= 0) {
+            buffer = poll(sizeClass);
+        }
+        if (buffer == null) {
+            misses.increment();
+            int capacity = sizeClass >= 0 ? SIZE_CLASSES[sizeClass] : size;
+            buffer = ByteBuffer.allocateDirect(capacity);
+            directBytes.addAndGet(capacity);
+        } else {
+            hits.increment();
+        }
+        buffer.clear().limit(size);
+
+        LeakTracker tracker = cleaner == null ? null : new LeakTracker(this, new Throwable("Буфер выделен здесь"));
+        return new PooledBuffer(this, sizeClass, buffer, tracker, cleaner);
+    }
+
+    // Буфер с готовыми данными: position = 0, limit = data.length
+    public PooledBuffer wrap(byte[] data) {
+        PooledBuffer pooled = acquire(data.length);
+        pooled.buffer().put(data).flip();
+        return pooled;
+    }
+
+    void recycle(ByteBuffer buffer, int sizeClass) {
+        released.increment();
+        if (sizeClass < 0) {
+            directBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+
+        if (!Thread.currentThread().isVirtual()) {
+            ArrayDeque<ByteBuffer> cache = local.get()[sizeClass].buffers;
+            if (cache.size() < Math.min(LOCAL_CACHE_SIZE, LOCAL_CACHE_BYTES / SIZE_CLASSES[sizeClass])) {
+                cache.push(buffer);
+                return;
+            }
+        }
+        SharedQueue queue = shared[sizeClass];
+        if (queue.count.incrementAndGet() <= queue.max) {
+            queue.buffers.offer(buffer);
+        } else {
+            // Пул полон - память освободит сборщик мусора
+            queue.count.decrementAndGet();
+            directBytes.addAndGet(-buffer.capacity());
+        }
+    }
+
+    private ByteBuffer poll(int sizeClass) {
+        // Кэш виртуальных потоков не держим: их слишком много и они короткоживущие
+        if (!Thread.currentThread().isVirtual()) {
+            ByteBuffer buffer = local.get()[sizeClass].buffers.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+        SharedQueue queue = shared[sizeClass];
+        ByteBuffer buffer = queue.buffers.poll();
+        if (buffer != null) {
+            queue.count.decrementAndGet();
+        }
+        return buffer;
+    }
+
+    private static int sizeClass(int size) {
+        for (int i = 0; i < SIZE_CLASSES.length; i++) {
+            if (size <= SIZE_CLASSES[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Выдано и ещё не возвращено
+    public long getInUse() {
+        return acquired.sum() - released.sum();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    // Выделено direct-памяти пулом и ещё не отдано сборщику мусора (выданное и свободное)
+    public long getDirectBytes() {
+        return directBytes.get();
+    }
+
+    public long getLeaks() {
+        return leaks.sum();
+    }
+}
@@ -1,40 +1,204 @@
 package org.example;
 
-import java.nio.channels.SocketChannel;
-import java.util.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ChatRoom {
+    private static final ClientSession[] EMPTY = new ClientSession[0];
+
     private final String name;
+    private final byte[] nameBytes;
     private final String owner;
-    private final Set<SocketChannel> members;
     private final int maxMembers;
+    private final RoomHistory history;
+    // Неизменяемый снимок: заменяется целиком при входе и выходе, рассылка читает его без блокировок
+    private volatile ClientSession[] members;
+    // Счётчики, участники на других узлах и ведро лимита заводятся при первом использовании:
+    // комнат бывает миллион (после загрузки снимка), а пишут в них единицы процентов
+    private volatile BroadcastStats stats;
+    // Участники на других узлах кластера: id узла -> сколько их там
+    private volatile Map<String, Integer> remoteMembers;
+    private volatile TokenBucket rateBucket;
+
+    private static final class BroadcastStats {
+        final LongAdder broadcasts = new LongAdder();
+        final LongAdder deliveries = new LongAdder();
+        final LongAdder broadcastNanos = new LongAdder();
+    }
 
-    public ChatRoom(String name, String owner, int maxMembers) {
+    public ChatRoom(String name, String owner, int maxMembers, RoomHistory history) {
         this.name = name;
+        this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
         this.owner = owner;
-        this.members = ConcurrentHashMap.newKeySet();
+        this.members = EMPTY;
         this.maxMembers = maxMembers;
+        this.history = history;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public byte[] getNameBytes() {
+        return nameBytes;
+    }
+
+    public String getOwner() {
+        return owner;
     }
 
-    public boolean addMember(SocketChannel channel) {
-        if (members.size() >= maxMembers) {
+    public int getMaxMembers() {
+        return maxMembers;
+    }
+
+    public RoomHistory getHistory() {
+        return history;
+    }
+
+    // Общий лимит сообщений комнаты, сколько бы участников ни писали
+    public TokenBucket getRateBucket() {
+        TokenBucket bucket = rateBucket;
+        if (bucket == null) {
+            synchronized (this) {
+                bucket = rateBucket;
+                if (bucket == null) {
+                    bucket = new TokenBucket();
+                    rateBucket = bucket;
+                }
+            }
+        }
+        return bucket;
+    }
+
+    public synchronized boolean addMember(ClientSession session) {
+        ClientSession[] current = members;
+        if (current.length >= maxMembers || indexOf(current, session) != -1) {
             return false;
         }
-        return members.add(channel);
+
+        ClientSession[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = session;
+        members = updated;
+        return true;
     }
 
-    public boolean removeMember(SocketChannel channel) {
-        return members.remove(channel);
+    // RESUME: новое соединение занимает место прежнего одним шагом, так что полная комната
+    // его не отвергнет, а прежнее, закрываясь, уже ничего не уберёт
+    public synchronized boolean replaceMember(ClientSession previous, ClientSession session) {
+        ClientSession[] current = members;
+        int index = indexOf(current, previous);
+        if (index == -1 || indexOf(current, session) != -1) {
+            return false;
+        }
+
+        ClientSession[] updated = current.clone();
+        updated[index] = session;
+        members = updated;
+        return true;
+    }
+
+    public synchronized boolean removeMember(ClientSession session) {
+        ClientSession[] current = members;
+        int index = indexOf(current, session);
+        if (index == -1) {
+            return false;
+        }
+
+        if (current.length == 1) {
+            members = EMPTY;
+            return true;
+        }
+        ClientSession[] updated = new ClientSession[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        members = updated;
+        return true;
     }
 
-    public Set<SocketChannel> getMembers() {
-        return new HashSet<>(members);
+    // Возвращает общий снимок, изменять массив нельзя
+    public ClientSession[] getMembers() {
+        return members;
     }
 
     public int getMemberCount() {
-        return members.size();
+        return members.length;
     }
 
-}
+    public void setRemoteMemberCount(String nodeId, int count) {
+        Map<String, Integer> remote = remoteMembers;
+        if (count > 0) {
+            if (remote == null) {
+                synchronized (this) {
+                    remote = remoteMembers;
+                    if (remote == null) {
+                        remote = new ConcurrentHashMap<>();
+                        remoteMembers = remote;
+                    }
+                }
+            }
+            remote.put(nodeId, count);
+        } else if (remote != null) {
+            remote.remove(nodeId);
+        }
+    }
 
+    public boolean hasRemoteMembers(String nodeId) {
+        Map<String, Integer> remote = remoteMembers;
+        return remote != null && remote.containsKey(nodeId);
+    }
+
+    // Участники на всех узлах, для LIST
+    public int getClusterMemberCount() {
+        int count = members.length;
+        Map<String, Integer> remote = remoteMembers;
+        if (remote != null) {
+            for (int remoteCount : remote.values()) {
+                count += remoteCount;
+            }
+        }
+        return count;
+    }
+
+    public void recordBroadcast(int recipients, long nanos) {
+        BroadcastStats current = stats;
+        if (current == null) {
+            synchronized (this) {
+                current = stats;
+                if (current == null) {
+                    current = new BroadcastStats();
+                    stats = current;
+                }
+            }
+        }
+        current.broadcasts.increment();
+        current.deliveries.add(recipients);
+        current.broadcastNanos.add(nanos);
+    }
+
+    public long getBroadcasts() {
+        BroadcastStats current = stats;
+        return current == null ? 0 : current.broadcasts.sum();
+    }
+
+    public long getDeliveries() {
+        BroadcastStats current = stats;
+        return current == null ? 0 : current.deliveries.sum();
+    }
+
+    public long getBroadcastNanos() {
+        BroadcastStats current = stats;
+        return current == null ? 0 : current.broadcastNanos.sum();
+    }
+
+    private static int indexOf(ClientSession[] sessions, ClientSession session) {
+        for (int i = 0; i < sessions.length; i++) {
+            if (sessions[i] == session) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -1,121 +1,78 @@
 package org.example;
 
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
-public class Client {
+public class Client implements ClientTransport.Listener {
     private final String host;
     private final int port;
-    private SocketChannel socketChannel;
-    private final ByteBuffer readBuffer;
-    private String username;
+    private ClientTransport transport;
     private volatile boolean running;
 
     public Client(String host, int port) {
         this.host = host;
         this.port = port;
-        this.readBuffer = ByteBuffer.allocate(1024);
-        this.running = true;
     }
 
+    // Транспорт с этим объектом как слушателем заводится здесь, а не в конструкторе:
+    // поток чтения не должен увидеть клиента недостроенным
     public void start() throws IOException {
-        socketChannel = SocketChannel.open();
-        socketChannel.configureBlocking(false);
-
         System.out.println("Подключение к серверу " + host + ":" + port + "...");
 
-        if (!socketChannel.connect(new InetSocketAddress(host, port))) {
-            while (!socketChannel.finishConnect()) {
-                System.out.print(".");
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return;
-                }
-            }
-        }
-
-        System.out.println("\nУспешно подключено к серверу!");
-
-        readServerMessage();
+        running = true;
+        transport = new ClientTransport(host, port, this);
 
-        setupUsername();
+        String greeting = transport.connect();
 
-        Thread readThread = new Thread(this::readMessages);
-        Thread writeThread = new Thread(this::writeMessages);
+        System.out.println("Успешно подключено к серверу!");
+        System.out.println(greeting);
 
-        readThread.start();
-        writeThread.start();
+        Scanner scanner = new Scanner(System.in);
+        setupUsername(scanner);
+        writeMessages(scanner);
+    }
 
-        try {
-            readThread.join();
-            writeThread.join();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+    private void setupUsername(Scanner scanner) throws IOException {
+        while (true) {
+            System.out.print("Введите ваше имя: ");
+            String reply = transport.login(scanner.nextLine());
+            System.out.println(reply);
+            if (!reply.startsWith("ERROR:")) {
+                return;
+            }
         }
     }
 
-    private void setupUsername() throws IOException {
-        Scanner scanner = new Scanner(System.in);
-
-        System.out.print("Введите ваше имя: ");
-        username = scanner.nextLine();
-
-        sendMessage(username);
-
-        readServerMessage();
+    // Строки от сервера печатает поток чтения транспорта, как только они приходят
+    @Override
+    public void onLine(String line) {
+        System.out.println(line);
     }
 
-    private void readMessages() {
-        try {
-            while (running) {
-                readBuffer.clear();
-                int bytesRead = socketChannel.read(readBuffer);
-
-                if (bytesRead > 0) {
-                    readBuffer.flip();
-                    String message = StandardCharsets.UTF_8.decode(readBuffer).toString();
-                    System.out.print(message);
-                } else if (bytesRead == -1) {
-                    System.out.println("\nСоединение с сервером разорвано.");
-                    running = false;
-                    break;
-                }
-
-                Thread.sleep(10);
-            }
-        } catch (IOException | InterruptedException e) {
-            if (running) {
-                System.out.println("Ошибка чтения сообщений: " + e.getMessage());
-            }
-        }
+    @Override
+    public void onStatus(String status) {
+        System.out.println(status);
     }
 
-    private void writeMessages() {
-        Scanner scanner = new Scanner(System.in);
+    @Override
+    public void onClosed() {
+        running = false;
+        System.out.println("Соединение с сервером закрыто. Нажмите Enter для выхода.");
+    }
 
+    private void writeMessages(Scanner scanner) {
         try {
-            while (running) {
+            while (running && scanner.hasNextLine()) {
                 String userInput = scanner.nextLine();
 
-                if (!userInput.trim().isEmpty()) {
-                    if (userInput.equalsIgnoreCase("stop")) {
-                        sendMessage("stop");
-                        running = false;
-                        break;
-                    }
-
-                    sendMessage(userInput);
+                if (!running || userInput.trim().isEmpty()) {
+                    continue;
                 }
-            }
-        } catch (IOException e) {
-            if (running) {
-                System.out.println("Ошибка отправки сообщения: " + e.getMessage());
+                if (userInput.equalsIgnoreCase("stop")) {
+                    transport.send("stop");
+                    break;
+                }
+                transport.send(userInput);
             }
         } finally {
             scanner.close();
@@ -123,35 +80,9 @@ public class Client {
         }
     }
 
-    private void sendMessage(String message) throws IOException {
-        ByteBuffer buffer = ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8));
-
-        while (buffer.hasRemaining()) {
-            socketChannel.write(buffer);
-        }
-    }
-
-    private void readServerMessage() throws IOException {
-        readBuffer.clear();
-        int bytesRead = socketChannel.read(readBuffer);
-
-        if (bytesRead > 0) {
-            readBuffer.flip();
-            String message = StandardCharsets.UTF_8.decode(readBuffer).toString();
-            System.out.print(message);
-        }
-    }
-
     private void closeConnection() {
         running = false;
-
-        try {
-            if (socketChannel != null && socketChannel.isOpen()) {
-                socketChannel.close();
-            }
-        } catch (IOException e) {
-            System.out.println("Ошибка при закрытии соединения: " + e.getMessage());
-        }
+        transport.close();
     }
 
     public static void main(String[] args) {
@@ -179,4 +110,4 @@ public class Client {
         }
         scanner.close();
     }
-}
\ No newline at end of file
+}
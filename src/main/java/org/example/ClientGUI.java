@@ -4,16 +4,13 @@ import javax.swing.*;
 import javax.swing.text.*;
 import java.awt.*;
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
 
-public class ClientGUI extends JFrame {
-    private SocketChannel socket;
+public class ClientGUI extends JFrame implements ClientTransport.Listener {
+    private ClientTransport transport;
     private String username;
     private String currentRoom;
-    private boolean running = false;
+    // Комнаты с уже пришедших страниц LIST, пока сервер присылает MORE
+    private final StringBuilder roomPages = new StringBuilder();
 
     private JTextPane chatArea;
     private StyledDocument doc;
@@ -73,70 +70,38 @@ public class ClientGUI extends JFrame {
 
     public void connect(String host, int port, String username) {
         this.username = username;
+        this.transport = new ClientTransport(host, port, this);
 
+        // Подключение и ответ на имя ждём вне потока окна
         new Thread(() -> {
             try {
-                socket = SocketChannel.open();
-                socket.configureBlocking(false);
-                socket.connect(new InetSocketAddress(host, port));
-
-                while (!socket.finishConnect()) {
-                    Thread.sleep(50);
-                }
-
-                running = true;
-                statusLabel.setText("Подключено к " + host + ":" + port);
+                String greeting = transport.connect();
+                SwingUtilities.invokeLater(() -> statusLabel.setText("Подключено к " + host + ":" + port));
                 addMessage("Система: Подключено к серверу\n");
-                sendCommand("USERNAME:" + username);
+                handleServerMessage(greeting);
+                handleServerMessage(transport.login(username));
 
-                startReading();
-
-            } catch (Exception e) {
+            } catch (IOException e) {
                 addMessage("Ошибка: " + e.getMessage() + "\n");
             }
         }).start();
     }
 
-    private void startReading() {
-        new Thread(() -> {
-            ByteBuffer buffer = ByteBuffer.allocate(1024);
-            StringBuilder sb = new StringBuilder();
+    // Строки от сервера приходят из потока чтения транспорта сразу по получении
+    @Override
+    public void onLine(String line) {
+        handleServerMessage(line);
+    }
 
-            while (running) {
-                try {
-                    buffer.clear();
-                    int read = socket.read(buffer);
-
-                    if (read > 0) {
-                        buffer.flip();
-                        String data = StandardCharsets.UTF_8.decode(buffer).toString();
-                        sb.append(data);
-
-                        int newlinePos;
-                        while ((newlinePos = sb.indexOf("\n")) != -1) {
-                            String line = sb.substring(0, newlinePos).trim();
-                            sb.delete(0, newlinePos + 1);
-
-                            if (!line.isEmpty()) {
-                                handleServerMessage(line);
-                            }
-                        }
-                    } else if (read == -1) {
-                        addMessage("Система: Соединение разорвано\n");
-                        running = false;
-                        break;
-                    }
+    @Override
+    public void onStatus(String status) {
+        addMessage("Система: " + status + "\n");
+    }
 
-                    Thread.sleep(10);
-                } catch (Exception e) {
-                    if (running) {
-                        addMessage("Ошибка чтения: " + e.getMessage() + "\n");
-                    }
-                    running = false;
-                    break;
-                }
-            }
-        }).start();
+    @Override
+    public void onClosed() {
+        addMessage("Система: Соединение закрыто\n");
+        SwingUtilities.invokeLater(() -> statusLabel.setText("Не подключено"));
     }
 
     private void handleServerMessage(String line) {
@@ -212,11 +177,21 @@ public class ClientGUI extends JFrame {
     }
 
     private void listRooms() {
+        roomPages.setLength(0);
         sendCommand("LIST:");
     }
 
+    // Обрезанная страница заканчивается на ;MORE:смещение - дозапрашиваем остальное и показываем всё разом
     private void showRooms(String roomsData) {
-        String[] rooms = roomsData.split(";");
+        int more = roomsData.lastIndexOf(";MORE:");
+        if (more != -1 && !roomsData.endsWith("]")) {
+            roomPages.append(roomsData, 0, more).append(';');
+            sendCommand("LIST::" + roomsData.substring(more + 6) + ":0");
+            return;
+        }
+        roomPages.append(roomsData);
+        String[] rooms = roomPages.toString().split(";");
+        roomPages.setLength(0);
         StringBuilder sb = new StringBuilder("Доступные комнаты:\n\n");
         for (String room : rooms) {
             sb.append("• ").append(room).append("\n");
@@ -224,19 +199,11 @@ public class ClientGUI extends JFrame {
         JOptionPane.showMessageDialog(this, sb.toString());
     }
 
+    // Команда встаёт в очередь транспорта, поток окна сеть не ждёт
     private void sendCommand(String command) {
-        if (socket == null || !socket.isConnected()) return;
+        if (transport == null) return;
 
-        new Thread(() -> {
-            try {
-                ByteBuffer buffer = ByteBuffer.wrap((command + "\n").getBytes(StandardCharsets.UTF_8));
-                while (buffer.hasRemaining()) {
-                    socket.write(buffer);
-                }
-            } catch (IOException e) {
-                addMessage("Ошибка отправки: " + e.getMessage() + "\n");
-            }
-        }).start();
+        transport.send(command);
     }
 
     private void addMessage(String text) {
@@ -1,53 +1,257 @@
 package org.example;
 
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ClientManager {
-    private final Set<SocketChannel> clients;
-    private final Map<SocketChannel, String> usernames;
+    private final Set<ClientSession> clients;
     private final Map<String, ChatRoom> rooms;
-    private final Map<SocketChannel, String> clientRooms;
-    private final Map<SocketChannel, String> userColors;
+    private final ServerConfig config;
     private final Random random;
+    private final AtomicLong historyBytes;
+    private final AtomicLong nextHistorySweep;
+    private final Metrics metrics;
+    private final EventLog eventLog;
+    private final BufferPool bufferPool;
+    private final FrameCompressor compressor;
+    private final RateLimiter rateLimiter;
+    private final RoomDirectory directory;
+    private final AdmissionControl admission;
+    // Закреплённые имена: по имени для проверки занятости, по токену для RESUME
+    private final Map<String, SessionRecord> sessionsByName;
+    private final Map<String, SessionRecord> sessionsByToken;
+    private final SecureRandom tokenRandom;
+    private MessageLog messageLog;
+    private ClusterLink cluster;
 
-    public ClientManager(){
+    public ClientManager(ServerConfig config){
+        this.config = config;
         this.clients = ConcurrentHashMap.newKeySet();
-        this.usernames = new ConcurrentHashMap<>();
         this.rooms = new ConcurrentHashMap<>();
-        this.clientRooms = new ConcurrentHashMap<>();
-        this.userColors = new ConcurrentHashMap<>();
         this.random = new Random();
+        this.historyBytes = new AtomicLong();
+        this.nextHistorySweep = new AtomicLong();
+        this.eventLog = new EventLog(config, System.out);
+        this.bufferPool = new BufferPool(config.getBufferPoolMaxBytes(),
+                config.isBufferLeakDetection() ? trace -> eventLog.log(EventType.BUFFER_LEAK, trace) : null);
+        this.metrics = new Metrics(rooms, bufferPool);
+        this.compressor = new FrameCompressor(config, bufferPool, metrics);
+        this.rateLimiter = new RateLimiter(config, metrics, eventLog);
+        this.directory = new RoomDirectory(config, bufferPool);
+        this.admission = new AdmissionControl(config, metrics, eventLog);
+        this.sessionsByName = new ConcurrentHashMap<>();
+        this.sessionsByToken = new ConcurrentHashMap<>();
+        this.tokenRandom = new SecureRandom();
 
-        rooms.put("Главная", new ChatRoom("Главная", "Сервер", 10));
+        addRoom(new ChatRoom("Главная", "Сервер", config.getMainRoomCapacity(), createHistory()));
     }
 
-    public void addClient(SocketChannel channel){
-        clients.add(channel);
-        userColors.put(channel, generateRandomColor());
+    // Подключает журнал на диске и восстанавливает комнаты, которые в нём есть
+    public void setMessageLog(MessageLog messageLog) {
+        this.messageLog = messageLog;
+        for (String roomName : messageLog.getRoomNames()) {
+            if (!rooms.containsKey(roomName)) {
+                addRoom(new ChatRoom(roomName, "Пользователь", config.getRoomCapacity(), createHistory()));
+            }
+        }
+    }
+
+    // false - комната с таким именем уже есть
+    private boolean addRoom(ChatRoom room) {
+        if (rooms.putIfAbsent(room.getName(), room) != null) {
+            return false;
+        }
+        directory.add(room);
+        return true;
+    }
+
+    public void setCluster(ClusterLink cluster) {
+        this.cluster = cluster;
+    }
+
+    public Collection<ChatRoom> getRooms() {
+        return rooms.values();
+    }
+
+    private RoomHistory createHistory() {
+        return new RoomHistory(config.getHistorySize(), config.getHistoryMaxBytesPerRoom(),
+                historyBytes, config.getHistoryMaxBytesTotal());
+    }
+
+    public OutboundQueue createOutboundQueue() {
+        return new OutboundQueue(config.getOutboundHighWatermark(), config.getOutboundLowWatermark());
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public EventLog getEventLog() {
+        return eventLog;
+    }
+
+    public AdmissionControl getAdmission() {
+        return admission;
+    }
+
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    public void addClient(ClientSession session){
+        session.setColor(generateRandomColor());
+        clients.add(session);
+        metrics.connectionOpened();
+    }
+
+    // Вся очистка в одном месте; повторный вызов для той же сессии ничего не делает
+    public boolean removeClient(ClientSession session){
+        if (!session.markClosed()) {
+            return false;
+        }
+        ChatRoom room = session.getRoom();
+        if (room != null) {
+            session.setRoom(null);
+            // Место могло уже перейти к соединению, вернувшемуся через RESUME
+            if (room.removeMember(session)) {
+                membershipChanged(room);
+            }
+        }
+        SessionRecord record = session.getRecord();
+        if (record != null) {
+            record.detach(session, System.currentTimeMillis());
+        }
+        clients.remove(session);
+        metrics.connectionClosed();
+        // Сессии без сокета (бенчмарки) через допуск не проходили
+        if (session.getAddress() != null) {
+            admission.release(session.getAddress());
+        }
+        return true;
+    }
+
+    // null - имя занято другой сессией (подключённой или ещё ждущей возврата)
+    public SessionRecord setUsername(ClientSession session, String username){
+        SessionRecord current = session.getRecord();
+        if (current != null && current.getUsername().equals(username)) {
+            return current;
+        }
+
+        long now = System.currentTimeMillis();
+        SessionRecord record = new SessionRecord(newToken(), username, session.getColor(), null, now);
+        record.attach(session);
+        while (true) {
+            SessionRecord existing = sessionsByName.putIfAbsent(username, record);
+            if (existing == null) {
+                break;
+            }
+            if (!existing.isExpired(now, config.getSessionResumeMillis())) {
+                return null;
+            }
+            if (sessionsByName.replace(username, existing, record)) {
+                sessionsByToken.remove(existing.getToken(), existing);
+                break;
+            }
+        }
+        sessionsByToken.put(record.getToken(), record);
+
+        // Смена имени освобождает прежнее сразу, без ожидания возврата
+        if (current != null) {
+            forget(current);
+        }
+        session.setRecord(record);
+        session.setUsername(username);
+        return record;
     }
 
-    public void removeClient(SocketChannel channel){
-        String room = clientRooms.get(channel);
-        if (room != null && rooms.containsKey(room)) {
-            rooms.get(room).removeMember(channel);
+    // Возврат по токену: имя, цвет и последняя комната прежней сессии. Если прежнее соединение
+    // ещё открыто (клиент переподключился раньше, чем сервер заметил обрыв), оно закрывается.
+    // null - токен неизвестен или время возврата вышло
+    public SessionRecord resume(ClientSession session, String token) {
+        SessionRecord record = sessionsByToken.get(token);
+        if (record == null) {
+            return null;
         }
-        clients.remove(channel);
-        usernames.remove(channel);
-        clientRooms.remove(channel);
-        userColors.remove(channel);
+        ClientSession previous;
+        synchronized (record) {
+            if (record.isExpired(System.currentTimeMillis(), config.getSessionResumeMillis())) {
+                return null;
+            }
+            previous = record.attach(session);
+        }
+        session.setRecord(record);
+        session.setColor(record.getColor());
+        session.setUsername(record.getUsername());
+        if (previous != null) {
+            takeOverRoom(previous, session, record.getRoom());
+            previous.getOwner().close(previous);
+        }
+        return record;
+    }
+
+    // Поля прежней сессии меняет только её собственный поток при закрытии, здесь - лишь состав
+    // комнаты под её монитором. Число участников не меняется, каталог и кластер не трогаем
+    private void takeOverRoom(ClientSession previous, ClientSession session, String roomName) {
+        ChatRoom room = roomName == null ? null : rooms.get(roomName);
+        if (room != null && room.replaceMember(previous, session)) {
+            session.setRoom(room);
+        }
+    }
+
+    private void forget(SessionRecord record) {
+        sessionsByName.remove(record.getUsername(), record);
+        sessionsByToken.remove(record.getToken(), record);
+    }
+
+    private String newToken() {
+        byte[] bytes = new byte[18];
+        tokenRandom.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    // Для снимка: действующие и ждущие возврата записи
+    public Collection<SessionRecord> getSessionRecords() {
+        return sessionsByToken.values();
+    }
+
+    // Загрузка снимка: комнату, которая уже есть (Главная), только дополняет история.
+    // Кадры истории забираются
+    // В каталог новые комнаты попадают одним вызовом restoreDirectory после загрузки, а не по одной.
+    // Возвращает новую комнату или null, если она уже была
+    public ChatRoom restoreRoom(String name, String owner, int maxMembers, PooledBuffer[] history) {
+        ChatRoom room = new ChatRoom(name, owner, maxMembers, createHistory());
+        ChatRoom existing = rooms.putIfAbsent(name, room);
+        for (PooledBuffer frame : history) {
+            (existing != null ? existing : room).getHistory().append(frame);
+            frame.release();
+        }
+        return existing == null ? room : null;
+    }
+
+    public void restoreDirectory(List<ChatRoom> restored) {
+        directory.addAll(restored);
     }
 
-    public void setUsername(SocketChannel channel, String username){
-        usernames.put(channel, username);
+    // Время возврата для записей из снимка отсчитывается от загрузки
+    public void restoreSession(String token, String username, String color, String room, long nowMillis) {
+        SessionRecord record = new SessionRecord(token, username, color, room, nowMillis);
+        if (sessionsByName.putIfAbsent(username, record) == null) {
+            sessionsByToken.put(token, record);
+        }
     }
 
-    public String getUsername(SocketChannel channel){
-        return usernames.get(channel);
+    // Сжатие включается только вне комнаты: иначе рассылка, начатая другим циклом до включения,
+    // могла бы прийти несжатой уже после ответа на USERNAME
+    public boolean canEnableCompression(ClientSession session) {
+        return config.isCompressionEnabled() && session.getRoom() == null;
     }
 
     public int getClientCount(){
@@ -59,76 +263,250 @@ public class ClientManager {
         if (rooms.containsKey(roomName)) {
             return false;
         }
-        rooms.put(roomName, new ChatRoom(roomName, "Пользователь", 5));
+        ChatRoom room = new ChatRoom(roomName, "Пользователь", config.getRoomCapacity(), createHistory());
+        if (!addRoom(room)) {
+            return false;
+        }
+        if (cluster != null) {
+            cluster.roomCreated(room);
+        }
         return true;
     }
 
-    public boolean joinRoom(SocketChannel channel, String roomName) {
+    // Комната, созданная на другом узле кластера; обратно не пересылается
+    public void createRemoteRoom(String roomName) {
         if (!rooms.containsKey(roomName)) {
-            return false;
+            addRoom(new ChatRoom(roomName, "Пользователь", config.getRoomCapacity(), createHistory()));
         }
+    }
+
+    public void setRemoteMemberCount(String roomName, String nodeId, int count) {
+        createRemoteRoom(roomName);
+        rooms.get(roomName).setRemoteMemberCount(nodeId, count);
+        directory.changed();
+    }
 
-        String oldRoom = clientRooms.get(channel);
-        if (oldRoom != null && rooms.containsKey(oldRoom)) {
-            rooms.get(oldRoom).removeMember(channel);
+    public void clearRemoteMembers(String nodeId) {
+        for (ChatRoom room : rooms.values()) {
+            room.setRemoteMemberCount(nodeId, 0);
         }
+        directory.changed();
+    }
 
+    // Кадр, пришедший с другого узла: только своим участникам, дальше не пересылается
+    public void deliverRemote(String roomName, boolean chat, PooledBuffer frame) {
+        createRemoteRoom(roomName);
+        ChatRoom room = rooms.get(roomName);
+        if (chat) {
+            room.getHistory().append(frame);
+            if (messageLog != null) {
+                messageLog.append(room.getName(), frame);
+            }
+        }
+        sendFrameToRoom(room, frame);
+    }
 
+    private void membershipChanged(ChatRoom room) {
+        directory.changed();
+        if (cluster != null) {
+            cluster.membershipChanged(room);
+        }
+    }
+
+    public boolean joinRoom(ClientSession session, String roomName) {
         ChatRoom room = rooms.get(roomName);
-        if (room.addMember(channel)) {
-            clientRooms.put(channel, roomName);
+        if (room == null) {
+            return false;
+        }
+
+        ChatRoom oldRoom = session.getRoom();
+        if (oldRoom != null) {
+            oldRoom.removeMember(session);
+            session.setRoom(null);
+            membershipChanged(oldRoom);
+        }
+
+        if (room.addMember(session)) {
+            session.setRoom(room);
+            membershipChanged(room);
+            SessionRecord record = session.getRecord();
+            if (record != null) {
+                record.setRoom(roomName);
+            }
             return true;
         }
         return false;
     }
 
-    public String getCurrentRoom(SocketChannel channel) {
-        return clientRooms.get(channel);
+    public RoomDirectory getRoomDirectory() {
+        return directory;
     }
 
-    public List<String> getRoomList() {
-        List<String> result = new ArrayList<>();
-        for (Map.Entry<String, ChatRoom> entry : rooms.entrySet()) {
-            result.add(entry.getKey() + " [" + entry.getValue().getMemberCount() + "]");
+    // Полный список уходит из кэша каталога, страница собирается по запросу
+    public void sendRoomList(ClientSession session, String prefix, int offset, int limit) {
+        if (prefix.isEmpty() && offset == 0 && limit <= 0) {
+            session.getOwner().send(session, directory.listFrame(session.isCompressed() ? compressor : null));
+            return;
         }
-        return result;
+        sendFrame(session, directory.page(prefix, offset, limit));
     }
 
-    public void sendToRoom(String roomName, String message) throws IOException {
-        if (!rooms.containsKey(roomName)) {
-            return;
+    public void sendToRoom(ChatRoom room, String message) {
+        PooledBuffer frame = encodeShared(message.getBytes(StandardCharsets.UTF_8), null);
+        sendFrameToRoom(room, frame);
+        if (cluster != null) {
+            cluster.forward(room, false, frame);
         }
+        frame.release();
+    }
 
-        ChatRoom room = rooms.get(roomName);
-        ByteBuffer buffer = ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8));
+    // История и журнал берут свои ссылки на кадр, участники - каждый свою через send
+    public void sendToRoomWithColor(ClientSession sender, ChatRoom room, Message text) {
+        PooledBuffer frame = encodeShared(sender.getChatPrefix(), text);
+        room.getHistory().append(frame);
+        if (messageLog != null) {
+            messageLog.append(room.getName(), frame);
+        }
+        sendFrameToRoom(room, frame);
+        if (cluster != null) {
+            cluster.forward(room, true, frame);
+        }
+        frame.release();
+    }
 
-        for (SocketChannel client : room.getMembers()) {
-            try {
-                buffer.rewind();
-                client.write(buffer);
-            } catch (IOException e) {
+    public void replayHistory(ClientSession session, ChatRoom room) {
+        PooledBuffer[] frames = room.getHistory().snapshot();
+        // Если история в памяти пуста (перезапуск или простой комнаты), её читает журнал не в цикле
+        // событий, а кадры уходят через владельца сессии из потока чтения. Поэтому такая история
+        // может прийти позже сообщений, разосланных в комнату за время чтения
+        if (frames.length == 0 && messageLog != null) {
+            messageLog.readLastAsync(room.getName(), config.getHistorySize(), stored -> {
+                PooledBuffer[] read = new PooledBuffer[stored.length];
+                for (int i = 0; i < stored.length; i++) {
+                    read[i] = PooledBuffer.unpooled(stored[i]);
+                }
+                sendHistory(session, read);
+            });
+            return;
+        }
+        sendHistory(session, frames);
+    }
+
+    private void sendHistory(ClientSession session, PooledBuffer[] frames) {
+        // Всю историю сжимаем одной записью: повторяющиеся строки жмутся лучше, чем по одной
+        if (session.isCompressed() && frames.length > 0) {
+            PooledBuffer compressed = compressor.compress(frames);
+            for (PooledBuffer frame : frames) {
+                frame.release();
             }
+            session.getOwner().send(session, compressed);
+            return;
+        }
+        for (PooledBuffer frame : frames) {
+            session.getOwner().send(session, frame);
         }
     }
 
-    public void sendToRoomWithColor(SocketChannel sender, String roomName, String username, String text) throws IOException {
-        if (!rooms.containsKey(roomName)) {
+    // Вызывается из циклов событий; проходит по комнатам и записям сессий не чаще раза в минуту,
+    // сколько бы циклов ни было
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        long next = nextHistorySweep.get();
+        if (now < next || !nextHistorySweep.compareAndSet(next, now + 60_000)) {
             return;
         }
 
-        String color = userColors.get(sender);
-        String message = "CHAT:" + username + ":" + color + ":" + text;
+        for (ChatRoom room : rooms.values()) {
+            if (now - room.getHistory().getLastActivity() > config.getHistoryIdleMillis()) {
+                room.getHistory().clear();
+            }
+        }
+        for (SessionRecord record : sessionsByToken.values()) {
+            if (record.isExpired(now, config.getSessionResumeMillis())) {
+                forget(record);
+            }
+        }
+    }
+
+    // Кадр кодируется один раз, а для клиентов со сжатием ещё и сжимается один раз;
+    // каждому участнику достаётся своя позиция в общем буфере
+    private void sendFrameToRoom(ChatRoom room, PooledBuffer frame) {
+        long start = System.nanoTime();
+        PooledBuffer compressed = null;
+        Map<SessionOwner, List<ClientSession>> remote = null;
+        Map<SessionOwner, List<ClientSession>> remoteCompressed = null;
 
-        sendToRoom(roomName, message);
+        ClientSession[] members = room.getMembers();
+        for (ClientSession member : members) {
+            SessionOwner owner = member.getOwner();
+            boolean compress = member.isCompressed();
+            if (compress && compressed == null) {
+                compressed = compressor.compress(frame);
+            }
+            if (owner.inEventLoop()) {
+                owner.send(member, compress ? compressed.retain() : frame.retain());
+            } else if (compress) {
+                remoteCompressed = group(remoteCompressed, owner, member);
+            } else {
+                remote = group(remote, owner, member);
+            }
+        }
+
+        // Участники с других рабочих циклов получают сообщение одной задачей на цикл
+        sendGrouped(remote, frame);
+        sendGrouped(remoteCompressed, compressed);
+        if (compressed != null) {
+            compressed.release();
+        }
+
+        long nanos = System.nanoTime() - start;
+        room.recordBroadcast(members.length, nanos);
+        metrics.broadcast(members.length, nanos);
     }
 
-    public void sendToClient(SocketChannel channel, String message) throws IOException {
-        ByteBuffer buffer = ByteBuffer.wrap((message + "\n").getBytes(StandardCharsets.UTF_8));
-        channel.write(buffer);
+    private static Map<SessionOwner, List<ClientSession>> group(Map<SessionOwner, List<ClientSession>> groups,
+                                                               SessionOwner owner, ClientSession member) {
+        if (groups == null) {
+            groups = new HashMap<>();
+        }
+        groups.computeIfAbsent(owner, k -> new ArrayList<>()).add(member);
+        return groups;
     }
 
-    public String getUserColor(SocketChannel channel) {
-        return userColors.getOrDefault(channel, "0000FF");
+    private static void sendGrouped(Map<SessionOwner, List<ClientSession>> groups, PooledBuffer frame) {
+        if (groups == null) {
+            return;
+        }
+        for (Map.Entry<SessionOwner, List<ClientSession>> entry : groups.entrySet()) {
+            entry.getKey().send(entry.getValue(), frame.retain(entry.getValue().size()));
+        }
+    }
+
+    private PooledBuffer encodeShared(byte[] head, Message tail) {
+        int length = head.length + (tail == null ? 0 : tail.getPayloadLength()) + 1;
+        PooledBuffer pooled = bufferPool.acquire(length);
+        ByteBuffer frame = pooled.buffer();
+        frame.put(head);
+        if (tail != null) {
+            tail.copyPayload(frame);
+        }
+        frame.put((byte) '\n');
+        frame.flip();
+        return pooled;
+    }
+
+    public void sendToClient(ClientSession session, String message) {
+        sendFrame(session, bufferPool.wrap((message + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Забирает ссылку на frame
+    private void sendFrame(ClientSession session, PooledBuffer frame) {
+        if (session.isCompressed()) {
+            PooledBuffer plain = frame;
+            frame = compressor.compress(plain);
+            plain.release();
+        }
+        session.getOwner().send(session, frame);
     }
 
     private String generateRandomColor() {
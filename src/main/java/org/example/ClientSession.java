@@ -0,0 +1,219 @@
+package org.example;
+
+import java.net.InetAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Всё состояние одного подключения; хранится во вложении SelectionKey
+public class ClientSession {
+    private final SocketChannel channel;
+    private final SessionOwner owner;
+    private final FrameDecoder decoder;
+    private final OutboundQueue outbound;
+    private final InetAddress address;
+    private SelectionKey key;
+    private volatile String username;
+    private volatile ChatRoom room;
+    private volatile SessionRecord record;
+    private String color;
+    private byte[] chatPrefix;
+    private boolean writeScheduled;
+    private volatile boolean compressed;
+    private final long connectedMillis;
+    private volatile long lastReadMillis;
+    private volatile boolean pingSent;
+    private final TokenBucket rateBucket;
+    private boolean rateWarned;
+    private long readPauseNanos;
+    // Читается на каждый исходящий кадр рассылки, поэтому без монитора
+    private final AtomicBoolean closed;
+
+    private long bytesIn;
+    private long bytesOut;
+    private long messagesIn;
+
+    public ClientSession(SocketChannel channel, SessionOwner owner, FrameDecoder decoder, OutboundQueue outbound) {
+        this.channel = channel;
+        this.owner = owner;
+        this.decoder = decoder;
+        this.outbound = outbound;
+        this.address = AdmissionControl.addressOf(channel);
+        this.connectedMillis = System.currentTimeMillis();
+        this.lastReadMillis = connectedMillis;
+        this.rateBucket = new TokenBucket();
+        this.closed = new AtomicBoolean();
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    // Запоминается при создании: после закрытия канала адрес уже не узнать
+    public InetAddress getAddress() {
+        return address;
+    }
+
+    public SessionOwner getOwner() {
+        return owner;
+    }
+
+    public FrameDecoder getDecoder() {
+        return decoder;
+    }
+
+    public OutboundQueue getOutbound() {
+        return outbound;
+    }
+
+    public SelectionKey getKey() {
+        return key;
+    }
+
+    public void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+        this.chatPrefix = null;
+    }
+
+    public ChatRoom getRoom() {
+        return room;
+    }
+
+    public void setRoom(ChatRoom room) {
+        this.room = room;
+    }
+
+    // Запись, за которой закреплено имя; null, пока имя не установлено
+    public SessionRecord getRecord() {
+        return record;
+    }
+
+    public void setRecord(SessionRecord record) {
+        this.record = record;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    public void setColor(String color) {
+        this.color = color;
+        this.chatPrefix = null;
+    }
+
+    // "CHAT:имя:цвет:" в байтах, пересчитывается только при смене имени
+    public byte[] getChatPrefix() {
+        byte[] prefix = chatPrefix;
+        if (prefix == null) {
+            prefix = ("CHAT:" + username + ":" + color + ":").getBytes(StandardCharsets.UTF_8);
+            chatPrefix = prefix;
+        }
+        return prefix;
+    }
+
+    // После согласования все кадры этой сессии идут через FrameCompressor
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public long getConnectedMillis() {
+        return connectedMillis;
+    }
+
+    public long getLastReadMillis() {
+        return lastReadMillis;
+    }
+
+    // Любые входящие байты считаются признаком жизни, отдельный PONG для этого не обязателен
+    public void touch(long nowMillis) {
+        lastReadMillis = nowMillis;
+        pingSent = false;
+    }
+
+    public boolean isPingSent() {
+        return pingSent;
+    }
+
+    public void setPingSent(boolean pingSent) {
+        this.pingSent = pingSent;
+    }
+
+    public TokenBucket getRateBucket() {
+        return rateBucket;
+    }
+
+    // Клиент уже получил предупреждение об отброшенных сообщениях
+    public boolean isRateWarned() {
+        return rateWarned;
+    }
+
+    public void setRateWarned(boolean rateWarned) {
+        this.rateWarned = rateWarned;
+    }
+
+    // Сколько не читать соединение после текущего буфера (RateLimitPolicy.DELAY);
+    // несколько сообщений из одного буфера дают самую длинную паузу
+    public void setReadPauseNanos(long nanos) {
+        readPauseNanos = Math.max(readPauseNanos, nanos);
+    }
+
+    public long takeReadPauseNanos() {
+        long nanos = readPauseNanos;
+        readPauseNanos = 0;
+        return nanos;
+    }
+
+    public boolean isWriteScheduled() {
+        return writeScheduled;
+    }
+
+    public void setWriteScheduled(boolean writeScheduled) {
+        this.writeScheduled = writeScheduled;
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    // true только для первого вызова: повторная очистка сессии ничего не делает
+    public boolean markClosed() {
+        return closed.compareAndSet(false, true);
+    }
+
+    public void addBytesIn(int bytes) {
+        bytesIn += bytes;
+    }
+
+    public void incrementMessagesIn() {
+        messagesIn++;
+    }
+
+    public void addBytesOut(int bytes) {
+        bytesOut += bytes;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public long getMessagesIn() {
+        return messagesIn;
+    }
+}
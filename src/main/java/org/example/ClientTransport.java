@@ -0,0 +1,361 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Соединение с сервером, общее для консольного клиента и окна. Блокирующий SocketChannel:
+// виртуальный поток чтения спит в read и отдаёт каждую строку слушателю сразу по приходу,
+// поток записи берёт команды из очереди, так что send не ждёт сеть ни в каком потоке.
+// Служебное протокола здесь же: PING получает PONG, токен из SESSION запоминается,
+// после подтверждения сжатия поток распаковывается с первого байта за этой строкой,
+// а после обрыва соединение восстанавливается через RESUME
+public class ClientTransport {
+    private static final String COMPRESS = ";compress=deflate";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    // Буфер чтения растёт удвоением под длинную строку (страница ROOMS, история) до этого предела;
+    // строка длиннее пропускается до перевода строки, соединение остаётся
+    private static final int MAX_LINE_BYTES = 16 * 1024 * 1024;
+    private static final long REPLY_TIMEOUT_SECONDS = 10;
+    private static final int RECONNECT_ATTEMPTS = 10;
+    private static final long RECONNECT_DELAY_MILLIS = 2000;
+
+    // Вызывается из потока чтения
+    public interface Listener {
+        void onLine(String line);
+
+        // Обрыв и попытки переподключения
+        void onStatus(String status);
+
+        // Соединение потеряно окончательно (не через close)
+        void onClosed();
+    }
+
+    private final String host;
+    private final int port;
+    private final Listener listener;
+    private final BufferPool bufferPool;
+    private final BlockingQueue<Outgoing> outbound;
+    private final StringBuilder text;
+    private volatile SocketChannel channel;
+    private volatile boolean running;
+    private volatile String username;
+    private volatile String sessionToken;
+    // Следующая строка от сервера уходит сюда, а не слушателю: ответ на подключение или USERNAME
+    private volatile CompletableFuture<String> reply;
+    private boolean loggedIn;
+    private FrameInflater inflater;
+    // Пропускается строка длиннее MAX_LINE_BYTES
+    private boolean skipping;
+
+    public ClientTransport(String host, int port, Listener listener) {
+        this.host = host;
+        this.port = port;
+        this.listener = listener;
+        this.bufferPool = new BufferPool(256 * 1024, null);
+        this.outbound = new LinkedBlockingQueue<>();
+        this.text = new StringBuilder();
+    }
+
+    // Блокирующее подключение без опроса finishConnect; возвращает приветствие сервера
+    public String connect() throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        running = true;
+        CompletableFuture<String> greeting = expectReply();
+        Thread.ofVirtual().name("chat-client-reader").start(this::readLoop);
+        Thread.ofVirtual().name("chat-client-writer").start(this::writeLoop);
+        try {
+            return await(greeting);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // Ответ на USERNAME: OK или ERROR (например, имя занято)
+    public String login(String username) throws IOException {
+        this.username = username;
+        CompletableFuture<String> answer = expectReply();
+        send("USERNAME:" + username + COMPRESS);
+        return await(answer);
+    }
+
+    public void send(String line) {
+        outbound.add(new Outgoing(line));
+    }
+
+    // Уже поставленные в очередь команды (например, stop) успевают уйти
+    public void close() {
+        running = false;
+        outbound.add(Outgoing.CLOSE);
+    }
+
+    private CompletableFuture<String> expectReply() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        reply = future;
+        return future;
+    }
+
+    private String await(CompletableFuture<String> future) throws IOException {
+        try {
+            return future.get(REPLY_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        } catch (TimeoutException e) {
+            throw new IOException("Сервер не ответил за " + REPLY_TIMEOUT_SECONDS + " с");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Прервано ожидание ответа сервера");
+        }
+    }
+
+    private void readLoop() {
+        PooledBuffer pooled = bufferPool.acquire(READ_BUFFER_SIZE);
+        ByteBuffer buffer = pooled.buffer();
+        try {
+            while (running) {
+                try {
+                    SocketChannel current = channel;
+                    while (current.read(buffer) != -1) {
+                        buffer.flip();
+                        process(buffer);
+                        buffer.compact();
+                        // Длинная строка разобрана - большой буфер больше не держим
+                        if (buffer.position() == 0 && buffer.limit() > READ_BUFFER_SIZE) {
+                            pooled.release();
+                            pooled = bufferPool.acquire(READ_BUFFER_SIZE);
+                            buffer = pooled.buffer();
+                        }
+                        if (buffer.hasRemaining()) {
+                            continue;
+                        }
+                        if (buffer.limit() >= MAX_LINE_BYTES) {
+                            buffer.clear();
+                            skipLine();
+                            continue;
+                        }
+                        PooledBuffer larger = bufferPool.acquire(Math.min(buffer.limit() * 2, MAX_LINE_BYTES));
+                        larger.buffer().put(buffer.flip());
+                        pooled.release();
+                        pooled = larger;
+                        buffer = larger.buffer();
+                    }
+                } catch (IOException e) {
+                    // Обрыв или close(); что именно, решает running
+                }
+                if (!running) {
+                    break;
+                }
+                failReply(new IOException("Соединение с сервером разорвано"));
+                buffer.clear();
+                skipping = false;
+                if (!reconnect()) {
+                    break;
+                }
+            }
+        } finally {
+            pooled.release();
+        }
+
+        if (running) {
+            running = false;
+            outbound.add(Outgoing.CLOSE);
+            listener.onClosed();
+        }
+        // Соединение, открытое переподключением уже после close()
+        closeChannel(channel);
+    }
+
+    // До подтверждения сжатия строки режутся прямо в буфере чтения: распаковка должна начаться
+    // ровно с байта после ответа. Дальше всё, что пришло, уходит в inflater целиком
+    private void process(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (inflater != null) {
+                text.append(inflater.inflate(buffer));
+                int newline;
+                while ((newline = text.indexOf("\n")) != -1) {
+                    String line = text.substring(0, newline);
+                    text.delete(0, newline + 1);
+                    if (skipping) {
+                        skipping = false;
+                        continue;
+                    }
+                    handleLine(line);
+                }
+                if (text.length() > MAX_LINE_BYTES) {
+                    text.setLength(0);
+                    skipLine();
+                }
+                return;
+            }
+
+            int newline = -1;
+            for (int i = buffer.position(); i < buffer.limit(); i++) {
+                if (buffer.get(i) == '\n') {
+                    newline = i;
+                    break;
+                }
+            }
+            if (skipping) {
+                buffer.position(newline == -1 ? buffer.limit() : newline + 1);
+                skipping = newline == -1;
+                continue;
+            }
+            if (newline == -1) {
+                return;
+            }
+            byte[] line = new byte[newline - buffer.position()];
+            buffer.get(line);
+            buffer.get();
+            handleLine(new String(line, StandardCharsets.UTF_8));
+        }
+    }
+
+    private void skipLine() {
+        if (!skipping) {
+            skipping = true;
+            listener.onStatus("Пропущена строка от сервера длиннее " + MAX_LINE_BYTES + " байт");
+        }
+    }
+
+    private void handleLine(String line) {
+        if (line.isEmpty()) {
+            return;
+        }
+        if (line.startsWith("PING:")) {
+            send("PONG:");
+            return;
+        }
+        if (line.startsWith("SESSION:")) {
+            sessionToken = line.substring("SESSION:".length());
+            return;
+        }
+        if (!loggedIn) {
+            // Сессию на сервере забыли (перезапуск без снимка или вышло время) - входим по имени
+            if (line.equals("ERROR:Сессия не найдена") && username != null) {
+                send("USERNAME:" + username + COMPRESS);
+                return;
+            }
+            if (line.startsWith("OK:Имя установлено") || line.startsWith("OK:Сессия восстановлена")) {
+                loggedIn = true;
+                if (line.endsWith(COMPRESS)) {
+                    inflater = new FrameInflater();
+                    line = line.substring(0, line.length() - COMPRESS.length());
+                }
+            }
+        }
+
+        CompletableFuture<String> waiting = reply;
+        if (waiting != null) {
+            reply = null;
+            waiting.complete(line);
+            return;
+        }
+        listener.onLine(line);
+    }
+
+    private void failReply(IOException error) {
+        CompletableFuture<String> waiting = reply;
+        if (waiting != null) {
+            reply = null;
+            waiting.completeExceptionally(error);
+        }
+    }
+
+    // RESUME пишется в новое соединение до того, как его увидит поток записи:
+    // набранное за время обрыва не должно обогнать возврат в сессию
+    private boolean reconnect() {
+        closeChannel(channel);
+        listener.onStatus("Соединение с сервером разорвано");
+        String token = sessionToken;
+        if (token == null) {
+            return false;
+        }
+        for (int attempt = 1; attempt <= RECONNECT_ATTEMPTS && running; attempt++) {
+            try {
+                Thread.sleep(RECONNECT_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                return false;
+            }
+            listener.onStatus("Переподключение (" + attempt + "/" + RECONNECT_ATTEMPTS + ")...");
+            SocketChannel next = null;
+            try {
+                next = SocketChannel.open(new InetSocketAddress(host, port));
+                write(next, "RESUME:" + token + COMPRESS);
+            } catch (IOException e) {
+                closeChannel(next);
+                continue;
+            }
+            loggedIn = false;
+            inflater = null;
+            text.setLength(0);
+            channel = next;
+            return true;
+        }
+        return false;
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                Outgoing next = outbound.take();
+                if (next == Outgoing.CLOSE) {
+                    return;
+                }
+                try {
+                    write(channel, next.line);
+                } catch (IOException e) {
+                    if (running) {
+                        listener.onStatus("Не отправлено: " + next.line);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeChannel(channel);
+        }
+    }
+
+    private void write(SocketChannel target, String line) throws IOException {
+        PooledBuffer pooled = bufferPool.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            ByteBuffer buffer = pooled.buffer();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+        } finally {
+            pooled.release();
+        }
+    }
+
+    // Элемент очереди записи. CLOSE - последний: поток записи отправляет всё до него
+    // и закрывает соединение; своим объектом он не совпадёт ни с одной строкой пользователя
+    private static final class Outgoing {
+        static final Outgoing CLOSE = new Outgoing(null);
+
+        final String line;
+
+        Outgoing(String line) {
+            this.line = line;
+        }
+    }
+
+    private static void closeChannel(SocketChannel target) {
+        if (target == null) {
+            return;
+        }
+        try {
+            target.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
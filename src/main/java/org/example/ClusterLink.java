@@ -0,0 +1,251 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Связь между узлами кластера: полная сетка, к каждому узлу из списка peers идёт своё исходящее
+// соединение, а входящие от них только читаются. Узел пересылает лишь то, что произошло у него,
+// и только тем узлам, где в комнате есть участники; дальше каждый узел рассылает кадр своим клиентам.
+// Кадр связи: int длина остатка, byte тип, u16 + UTF-8 имя комнаты (или id узла), данные
+public class ClusterLink {
+    static final byte HELLO = 1;
+    static final byte CREATE = 2;
+    static final byte COUNT = 3;
+    static final byte CHAT = 4;
+    static final byte SYSTEM = 5;
+
+    private final ServerConfig config;
+    private final ClientManager clientManager;
+    private final String nodeId;
+    private final List<ClusterPeer> peers;
+    // Узлы, с которыми исходящее соединение установлено: id узла -> соединение
+    private final Map<String, ClusterPeer> connected;
+    private ServerSocketChannel serverChannel;
+
+    public ClusterLink(ServerConfig config, ClientManager clientManager) {
+        this.config = config;
+        this.clientManager = clientManager;
+        this.nodeId = config.getNodeId();
+        this.peers = new ArrayList<>();
+        this.connected = new ConcurrentHashMap<>();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void start() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(config.getClusterPort()));
+        Thread.ofVirtual().name("cluster-acceptor").start(this::acceptPeers);
+        clientManager.getEventLog().log(EventType.CLUSTER_LISTENING, nodeId, config.getClusterPort());
+
+        for (String address : config.getClusterPeers()) {
+            ClusterPeer peer = new ClusterPeer(this, address, config.getClusterQueueCapacity());
+            peers.add(peer);
+            peer.start();
+        }
+    }
+
+    public void close() {
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+        }
+        for (ClusterPeer peer : peers) {
+            peer.close();
+        }
+    }
+
+    // --- исходящие события этого узла ---
+
+    public void roomCreated(ChatRoom room) {
+        broadcast(encode(CREATE, room.getNameBytes(), null));
+    }
+
+    // Число участников уходит абсолютным значением, прочитанным в момент отправки,
+    // поэтому изменения из разных циклов не могут прийти на другой узел в обратном порядке
+    public void membershipChanged(ChatRoom room) {
+        for (ClusterPeer peer : connected.values()) {
+            peer.markDirty(room);
+        }
+    }
+
+    // Кадр уже закодирован для клиентов; он уходит один раз на узел, где есть участники комнаты
+    public void forward(ChatRoom room, boolean chat, PooledBuffer frame) {
+        List<ClusterPeer> targets = null;
+        for (Map.Entry<String, ClusterPeer> entry : connected.entrySet()) {
+            if (room.hasRemoteMembers(entry.getKey())) {
+                if (targets == null) {
+                    targets = new ArrayList<>();
+                }
+                targets.add(entry.getValue());
+            }
+        }
+        if (targets == null) {
+            return;
+        }
+
+        PooledBuffer encoded = encode(chat ? CHAT : SYSTEM, room.getNameBytes(), frame.buffer());
+        for (ClusterPeer peer : targets) {
+            peer.send(encoded.retain());
+        }
+        encoded.release();
+    }
+
+    private void broadcast(PooledBuffer encoded) {
+        for (ClusterPeer peer : connected.values()) {
+            peer.send(encoded.retain());
+        }
+        encoded.release();
+    }
+
+    PooledBuffer encode(byte type, byte[] name, ByteBuffer payload) {
+        int payloadLength = payload == null ? 0 : payload.remaining();
+        PooledBuffer pooled = start(type, name, payloadLength);
+        if (payload != null) {
+            pooled.buffer().put(payload.duplicate());
+        }
+        pooled.buffer().flip();
+        return pooled;
+    }
+
+    PooledBuffer encodeCount(byte[] name, int count) {
+        PooledBuffer pooled = start(COUNT, name, 4);
+        pooled.buffer().putInt(count).flip();
+        return pooled;
+    }
+
+    private PooledBuffer start(byte type, byte[] name, int payloadLength) {
+        int length = 1 + 2 + name.length + payloadLength;
+        PooledBuffer pooled = clientManager.getBufferPool().acquire(4 + length);
+        pooled.buffer().putInt(length).put(type).putShort((short) name.length).put(name);
+        return pooled;
+    }
+
+    PooledBuffer hello() {
+        return encode(HELLO, nodeId.getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    // Снимок состояния для только что подключённого узла: все комнаты и свои участники в них
+    List<PooledBuffer> snapshot() {
+        List<PooledBuffer> frames = new ArrayList<>();
+        for (ChatRoom room : clientManager.getRooms()) {
+            frames.add(encode(CREATE, room.getNameBytes(), null));
+            if (room.getMemberCount() > 0) {
+                frames.add(encodeCount(room.getNameBytes(), room.getMemberCount()));
+            }
+        }
+        return frames;
+    }
+
+    void peerConnected(String peerId, ClusterPeer peer) {
+        connected.put(peerId, peer);
+        clientManager.getEventLog().log(EventType.CLUSTER_PEER_CONNECTED, peerId, peer.getAddress());
+    }
+
+    void peerDisconnected(String peerId, ClusterPeer peer) {
+        if (connected.remove(peerId, peer)) {
+            clientManager.getEventLog().log(EventType.CLUSTER_PEER_LOST, peerId, peer.getAddress());
+        }
+    }
+
+    // --- входящие соединения ---
+
+    private void acceptPeers() {
+        try {
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                Thread.ofVirtual().name("cluster-inbound").start(() -> readPeer(channel));
+            }
+        } catch (IOException ignored) {
+            // сокет закрыт в close()
+        }
+    }
+
+    // Самый длинный кадр, который пересылает узел: CHAT:имя:цвет: и строка клиента до max-frame-size,
+    // а имя пользователя само не длиннее строки; имя комнаты в заголовке - тоже из строки клиента
+    private int maxForwardedBytes() {
+        return 3 * config.getMaxFrameSize() + 64;
+    }
+
+    private void readPeer(SocketChannel channel) {
+        String peerId = null;
+        byte[] scratch = new byte[maxForwardedBytes()];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)))) {
+            while (true) {
+                int length = in.readInt();
+                if (length < 3) {
+                    throw new IOException("Некорректный кадр узла кластера");
+                }
+                byte type = in.readByte();
+                int nameLength = in.readUnsignedShort();
+                int payloadLength = length - 3 - nameLength;
+                if (payloadLength < 0) {
+                    throw new IOException("Некорректный кадр узла кластера");
+                }
+                // Границы кадра известны, поэтому слишком длинный (например, у узла больше max-frame-size)
+                // пропускается один, а связь и участники того узла остаются
+                if (nameLength + payloadLength > scratch.length) {
+                    in.skipNBytes(nameLength + payloadLength);
+                    clientManager.getEventLog().log(EventType.CLUSTER_FRAME_SKIPPED, peerId, length);
+                    continue;
+                }
+                in.readFully(scratch, 0, nameLength);
+                String name = new String(scratch, 0, nameLength, StandardCharsets.UTF_8);
+
+                if (type == HELLO) {
+                    peerId = name;
+                    // Отвечаем своим id, чтобы исходящая сторона знала, с кем говорит
+                    PooledBuffer reply = hello();
+                    try {
+                        while (reply.buffer().hasRemaining()) {
+                            channel.write(reply.buffer());
+                        }
+                    } finally {
+                        reply.release();
+                    }
+                    continue;
+                }
+                if (peerId == null) {
+                    throw new IOException("Узел не представился");
+                }
+
+                switch (type) {
+                    case CREATE:
+                        clientManager.createRemoteRoom(name);
+                        break;
+                    case COUNT:
+                        clientManager.setRemoteMemberCount(name, peerId, in.readInt());
+                        break;
+                    case CHAT:
+                    case SYSTEM:
+                        in.readFully(scratch, 0, payloadLength);
+                        PooledBuffer frame = clientManager.getBufferPool().acquire(payloadLength);
+                        frame.buffer().put(scratch, 0, payloadLength).flip();
+                        clientManager.deliverRemote(name, type == CHAT, frame);
+                        frame.release();
+                        break;
+                    default:
+                        in.skipNBytes(payloadLength);
+                }
+            }
+        } catch (IOException e) {
+            if (peerId != null) {
+                // Участники того узла больше не достижимы
+                clientManager.clearRemoteMembers(peerId);
+            }
+        }
+    }
+}
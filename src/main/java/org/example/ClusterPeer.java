@@ -0,0 +1,246 @@
+package org.example;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Исходящее соединение к одному узлу. Циклы событий только кладут готовые кадры в очередь;
+// пишет в сокет отдельный виртуальный поток, он же переподключается после обрыва
+public class ClusterPeer {
+    private static final long RECONNECT_MILLIS = 1000;
+    // Будит поток записи, когда в dirty появилась комната; в сокет не пишется
+    private static final PooledBuffer WAKE = PooledBuffer.unpooled(ByteBuffer.allocate(0));
+
+    private final ClusterLink link;
+    private final String address;
+    private final BlockingQueue<PooledBuffer> queue;
+    // Комнаты, у которых изменилось число участников с прошлой отправки
+    private final Set<ChatRoom> dirty;
+    private final AtomicLong dropped;
+    private volatile boolean running;
+    private volatile SocketChannel channel;
+    private Thread writer;
+
+    public ClusterPeer(ClusterLink link, String address, int queueCapacity) {
+        this.link = link;
+        this.address = address;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.dirty = ConcurrentHashMap.newKeySet();
+        this.dropped = new AtomicLong();
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public void start() {
+        running = true;
+        writer = Thread.ofVirtual().name("cluster-peer-" + address).start(this::run);
+    }
+
+    public void close() {
+        running = false;
+        writer.interrupt();
+        closeChannel();
+    }
+
+    // Забирает ссылку на frame; если узел не успевает, кадр теряется, а не задерживает цикл
+    public void send(PooledBuffer frame) {
+        if (!queue.offer(frame)) {
+            frame.release();
+            dropped.incrementAndGet();
+        }
+    }
+
+    public void markDirty(ChatRoom room) {
+        if (dirty.add(room)) {
+            queue.offer(WAKE);
+        }
+    }
+
+    private void run() {
+        while (running) {
+            String peerId = null;
+            try {
+                channel = SocketChannel.open(parse(address));
+                peerId = handshake();
+                if (peerId.equals(link.getNodeId())) {
+                    // В списке узлов оказался сам этот узел
+                    closeChannel();
+                    return;
+                }
+
+                // Сначала в очередь начинают попадать новые события, затем уходит снимок;
+                // CREATE и COUNT идемпотентны, поэтому повтор после снимка безвреден
+                link.peerConnected(peerId, this);
+                Thread.ofVirtual().name("cluster-peer-watch-" + address).start(this::watchClose);
+                writeAll(link.snapshot());
+                writeLoop();
+            } catch (IOException e) {
+                // Узел ещё не запущен или соединение оборвалось - пробуем снова
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                if (peerId != null) {
+                    link.peerDisconnected(peerId, this);
+                }
+                closeChannel();
+                drainQueue();
+            }
+
+            try {
+                Thread.sleep(RECONNECT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private String handshake() throws IOException {
+        write(link.hello());
+
+        DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+        int length = in.readInt();
+        byte type = in.readByte();
+        int nameLength = in.readUnsignedShort();
+        if (type != ClusterLink.HELLO || nameLength != length - 3) {
+            throw new IOException("Ожидался HELLO от " + address);
+        }
+        byte[] name = new byte[nameLength];
+        in.readFully(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    private void writeLoop() throws IOException, InterruptedException {
+        ByteBuffer[] gather = new ByteBuffer[OutboundQueue.MAX_GATHER];
+        PooledBuffer[] batch = new PooledBuffer[OutboundQueue.MAX_GATHER];
+        while (running && channel.isOpen()) {
+            PooledBuffer first = queue.poll(RECONNECT_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                continue;
+            }
+
+            // Всё, что накопилось, уходит одним gathering write
+            int count = 0;
+            PooledBuffer next = first;
+            do {
+                if (next != WAKE) {
+                    batch[count++] = next;
+                }
+            } while (count < batch.length - 8 && (next = queue.poll()) != null);
+
+            for (ChatRoom room : dirty) {
+                if (count == batch.length) {
+                    queue.offer(WAKE);
+                    break;
+                }
+                dirty.remove(room);
+                batch[count++] = link.encodeCount(room.getNameBytes(), room.getMemberCount());
+            }
+            if (count == 0) {
+                continue;
+            }
+
+            long total = 0;
+            for (int i = 0; i < count; i++) {
+                gather[i] = batch[i].buffer().duplicate();
+                total += gather[i].remaining();
+            }
+            try {
+                long written = 0;
+                while (written < total) {
+                    written += channel.write(gather, 0, count);
+                }
+            } finally {
+                for (int i = 0; i < count; i++) {
+                    batch[i].release();
+                    batch[i] = null;
+                    gather[i] = null;
+                }
+            }
+        }
+    }
+
+    // После HELLO узел в это соединение ничего не пишет: конец потока значит, что узел упал.
+    // Без этого обрыв заметили бы только на следующей записи, потеряв её
+    private void watchClose() {
+        SocketChannel current = channel;
+        ByteBuffer buf = ByteBuffer.allocate(64);
+        try {
+            while (current.read(buf) != -1) {
+                buf.clear();
+            }
+        } catch (IOException ignored) {
+        }
+        try {
+            current.close();
+        } catch (IOException ignored) {
+        }
+        queue.offer(WAKE);
+    }
+
+    private void writeAll(List<PooledBuffer> frames) throws IOException {
+        try {
+            for (PooledBuffer frame : frames) {
+                write(frame.retain());
+            }
+        } finally {
+            for (PooledBuffer frame : frames) {
+                frame.release();
+            }
+        }
+    }
+
+    // Забирает ссылку на frame
+    private void write(PooledBuffer frame) throws IOException {
+        try {
+            ByteBuffer buf = frame.buffer().duplicate();
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    // Пока узел недоступен, события для него не копятся: после переподключения он получит снимок
+    private void drainQueue() {
+        PooledBuffer frame;
+        while ((frame = queue.poll()) != null) {
+            if (frame != WAKE) {
+                frame.release();
+            }
+        }
+        dirty.clear();
+    }
+
+    private void closeChannel() {
+        SocketChannel current = channel;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static InetSocketAddress parse(String address) {
+        int colon = address.lastIndexOf(':');
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+}
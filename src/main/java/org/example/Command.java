@@ -0,0 +1,96 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public enum Command {
+    USERNAME(1),
+    CREATE(2),
+    JOIN(3),
+    LIST(4),
+    MSG(5),
+    STATS(6),
+    PING(7),
+    PONG(8),
+    RESUME(9);
+
+    private static final Command[] BY_OPCODE = new Command[256];
+    private static final Command[][] BY_FIRST_BYTE = new Command[128][];
+
+    static {
+        for (Command command : values()) {
+            BY_OPCODE[command.opcode] = command;
+
+            int first = command.nameBytes[0];
+            Command[] candidates = BY_FIRST_BYTE[first];
+            if (candidates == null) {
+                candidates = new Command[0];
+            }
+            candidates = Arrays.copyOf(candidates, candidates.length + 1);
+            candidates[candidates.length - 1] = command;
+            BY_FIRST_BYTE[first] = candidates;
+        }
+    }
+
+    private final int opcode;
+    private final byte[] nameBytes;
+
+    Command(int opcode) {
+        this.opcode = opcode;
+        this.nameBytes = name().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public static Command fromOpcode(byte opcode) {
+        return BY_OPCODE[opcode & 0xFF];
+    }
+
+    // Поиск по байтам кадра без создания строки
+    public static Command fromBytes(ByteBuffer buf, int offset, int length) {
+        if (length == 0) {
+            return null;
+        }
+        int first = buf.get(offset);
+        if (first < 0) {
+            return null;
+        }
+        Command[] candidates = BY_FIRST_BYTE[first];
+        if (candidates == null) {
+            return null;
+        }
+
+        next:
+        for (Command command : candidates) {
+            byte[] name = command.nameBytes;
+            if (name.length != length) {
+                continue;
+            }
+            for (int i = 1; i < length; i++) {
+                if (buf.get(offset + i) != name[i]) {
+                    continue next;
+                }
+            }
+            return command;
+        }
+        return null;
+    }
+
+    public static Command fromName(String name) {
+        switch (name) {
+            case "USERNAME": return USERNAME;
+            case "CREATE": return CREATE;
+            case "JOIN": return JOIN;
+            case "LIST": return LIST;
+            case "MSG": return MSG;
+            case "STATS": return STATS;
+            case "PING": return PING;
+            case "PONG": return PONG;
+            case "RESUME": return RESUME;
+            default: return null;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package org.example;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+// Обработка команд клиента, общая для режима селектора и режима виртуальных потоков
+public class CommandProcessor {
+    private final ClientManager clientManager;
+
+    public CommandProcessor(ClientManager clientManager) {
+        this.clientManager = clientManager;
+    }
+
+    public void handleMessage(ClientSession client, Message msg) throws IOException {
+        Command cmd = msg.getType();
+        client.incrementMessagesIn();
+        clientManager.getMetrics().command(cmd);
+
+        if (cmd == null) {
+            clientManager.sendToClient(client, "ERROR:Неизвестная команда");
+            return;
+        }
+
+        switch (cmd) {
+            case USERNAME:
+                handleUsername(client, msg.getData());
+                break;
+
+            case CREATE:
+                handleCreateRoom(client, msg.getData());
+                break;
+
+            case JOIN:
+                handleJoinRoom(client, msg.getData());
+                break;
+
+            case LIST:
+                handleListRooms(client, msg.getData());
+                break;
+
+            case MSG:
+                handleChatMessage(client, msg);
+                break;
+
+            case STATS:
+                handleStats(client);
+                break;
+
+            case PING:
+                clientManager.sendToClient(client, "PONG:");
+                break;
+
+            case RESUME:
+                handleResume(client, msg.getData());
+                break;
+
+            case PONG:
+                // Время активности уже обновлено при чтении
+                break;
+        }
+    }
+
+    // USERNAME:имя[;compress=deflate]
+    private void handleUsername(ClientSession client, String data) throws IOException {
+        int options = data.indexOf(';');
+        String username = options == -1 ? data : data.substring(0, options);
+
+        SessionRecord record = clientManager.setUsername(client, username);
+        if (record == null) {
+            clientManager.sendToClient(client, "ERROR:Имя занято");
+            return;
+        }
+        // Токен до OK: клиенту, ждущему OK, он уже известен
+        clientManager.sendToClient(client, "SESSION:" + record.getToken());
+        acknowledge(client, "OK:Имя установлено - " + username, wantsCompression(data, options));
+        clientManager.getEventLog().log(EventType.USERNAME_SET, username);
+    }
+
+    // RESUME:токен[;compress=deflate] - вместо USERNAME после переподключения, возвращает в прежнюю комнату
+    private void handleResume(ClientSession client, String data) throws IOException {
+        if (client.getUsername() != null) {
+            clientManager.sendToClient(client, "ERROR:Имя уже установлено");
+            return;
+        }
+        int options = data.indexOf(';');
+        String token = options == -1 ? data : data.substring(0, options);
+
+        SessionRecord record = clientManager.resume(client, token);
+        if (record == null) {
+            clientManager.sendToClient(client, "ERROR:Сессия не найдена");
+            return;
+        }
+        clientManager.sendToClient(client, "SESSION:" + record.getToken());
+        acknowledge(client, "OK:Сессия восстановлена - " + record.getUsername(), wantsCompression(data, options));
+        clientManager.getEventLog().log(EventType.SESSION_RESUMED, record.getUsername());
+
+        // Место прежнего соединения в комнате уже перешло к этому; иначе входим заново
+        String roomName = record.getRoom();
+        if (client.getRoom() != null) {
+            announceJoin(client, roomName);
+        } else if (roomName != null) {
+            handleJoinRoom(client, roomName);
+        }
+    }
+
+    private static boolean wantsCompression(String data, int options) {
+        if (options == -1) {
+            return false;
+        }
+        for (String option : data.substring(options + 1).split(";")) {
+            if (option.equals("compress=deflate")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Сам ответ уходит ещё несжатым, всё после него - сжатым
+    private void acknowledge(ClientSession client, String reply, boolean compress) {
+        if (compress && !client.isCompressed() && clientManager.canEnableCompression(client)) {
+            clientManager.sendToClient(client, reply + ";compress=deflate");
+            client.setCompressed(true);
+        } else {
+            clientManager.sendToClient(client, reply);
+        }
+    }
+
+    // Команды с рассылкой проходят через лимиты до того, как собран кадр
+    private boolean admit(ClientSession client, ChatRoom room) {
+        if (clientManager.getRateLimiter().admit(client, room)) {
+            return true;
+        }
+        // Об отброшенных сообщениях клиент узнаёт один раз, пока лимит его не отпустит
+        if (!client.isClosed() && !client.isRateWarned()) {
+            client.setRateWarned(true);
+            clientManager.sendToClient(client, "ERROR:Слишком много сообщений, часть отброшена");
+        }
+        return false;
+    }
+
+    private void handleCreateRoom(ClientSession client, String roomName) throws IOException {
+        if (!admit(client, null)) {
+            return;
+        }
+        if (clientManager.createRoom(roomName)) {
+            clientManager.sendToClient(client, "OK:Комната создана - " + roomName);
+            clientManager.getEventLog().log(EventType.ROOM_CREATED, roomName);
+        } else {
+            clientManager.sendToClient(client, "ERROR:Комната уже существует");
+        }
+    }
+
+    private void handleJoinRoom(ClientSession client, String roomName) throws IOException {
+        if (!admit(client, null)) {
+            return;
+        }
+        if (clientManager.joinRoom(client, roomName)) {
+            announceJoin(client, roomName);
+        } else {
+            clientManager.sendToClient(client, "ERROR:Не удалось войти в комнату");
+        }
+    }
+
+    private void announceJoin(ClientSession client, String roomName) {
+        String username = client.getUsername();
+        clientManager.sendToClient(client, "JOINED:" + roomName);
+        clientManager.replayHistory(client, client.getRoom());
+
+        String notification = "SYSTEM:" + username + " вошёл в комнату";
+        clientManager.sendToRoom(client.getRoom(), notification);
+
+        clientManager.getEventLog().log(EventType.ROOM_JOINED, username, roomName);
+    }
+
+    // LIST: - первая страница, LIST:префикс - по префиксу, LIST:префикс:смещение:количество - страница
+    // (количество 0 - наибольшая страница); обрезанный ответ заканчивается на ;MORE:смещение
+    private void handleListRooms(ClientSession client, String data) throws IOException {
+        String prefix = data;
+        int offset = 0;
+        int limit = 0;
+
+        int last = data.lastIndexOf(':');
+        int previous = last > 0 ? data.lastIndexOf(':', last - 1) : -1;
+        if (previous != -1) {
+            try {
+                offset = Integer.parseInt(data.substring(previous + 1, last));
+                limit = Integer.parseInt(data.substring(last + 1));
+                prefix = data.substring(0, previous);
+            } catch (NumberFormatException e) {
+                // Двоеточия - часть имени комнаты
+                offset = 0;
+                limit = 0;
+            }
+        }
+        clientManager.sendRoomList(client, prefix, offset, limit);
+    }
+
+    // Служебная команда: отвечает только на подключения с этой же машины
+    private void handleStats(ClientSession client) throws IOException {
+        InetAddress address = client.getAddress();
+        if (address == null || !address.isLoopbackAddress()) {
+            clientManager.sendToClient(client, "ERROR:Команда доступна только локально");
+            return;
+        }
+        clientManager.sendToClient(client, "STATS:" + clientManager.getMetrics().format(client));
+    }
+
+    private void handleChatMessage(ClientSession client, Message message) throws IOException {
+        ChatRoom room = client.getRoom();
+
+        if (room == null) {
+            clientManager.sendToClient(client, "ERROR:Вы не в комнате");
+            return;
+        }
+        if (!admit(client, room)) {
+            return;
+        }
+
+        clientManager.sendToRoomWithColor(client, room, message);
+    }
+
+    public void notifyLeaving(ClientSession client) {
+        String username = client.getUsername();
+        ChatRoom room = client.getRoom();
+
+        // Клиент вернулся по RESUME новым соединением и из комнаты не уходил
+        SessionRecord record = client.getRecord();
+        if (record != null && record.isReplaced(client)) {
+            return;
+        }
+        if (room != null && username != null) {
+            String notification = "SYSTEM:" + username + " покинул комнату";
+            clientManager.sendToRoom(room, notification);
+        }
+    }
+
+    // true - сессия была удалена этим вызовом
+    public boolean disconnect(ClientSession client) {
+        if (!clientManager.removeClient(client)) {
+            return false;
+        }
+        clientManager.getEventLog().log(EventType.CLIENT_DISCONNECTED, client.getUsername(), clientManager.getClientCount());
+        return true;
+    }
+}
@@ -0,0 +1,295 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.zip.Deflater;
+
+// Настройки сервера, каждый следующий источник перекрывает предыдущий:
+// значения по умолчанию, файл (--config=путь, иначе chat-server.properties в текущем каталоге, если есть),
+// переменные окружения CHAT_ИМЯ (CHAT_MAX_CLIENTS=5000), аргументы --имя=значение.
+// Имена везде одни и те же: port=9000 в файле, CHAT_PORT=9000, --port=9000.
+// Связанные настройки проверяются вместе уже после всех источников: ошибка видна при запуске,
+// а не первым клиентом, упёршимся в неё
+public class ConfigLoader {
+    public static final String DEFAULT_FILE = "chat-server.properties";
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_CLIENTS = 10_000;
+
+    public static ServerConfig load(String[] args) throws IOException {
+        ServerConfig config = new ServerConfig(DEFAULT_PORT, DEFAULT_MAX_CLIENTS);
+
+        String file = null;
+        for (String arg : args) {
+            if (arg.startsWith("--config=")) {
+                file = arg.substring("--config=".length());
+            }
+        }
+        if (file == null && System.getenv("CHAT_CONFIG") != null) {
+            file = System.getenv("CHAT_CONFIG");
+        }
+        Path path = Paths.get(file != null ? file : DEFAULT_FILE);
+        if (file != null || Files.exists(path)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+            for (String name : properties.stringPropertyNames()) {
+                apply(config, name, properties.getProperty(name).trim());
+            }
+        }
+
+        // Чужие переменные с тем же префиксом не ошибка: окружение общее
+        for (Map.Entry<String, String> entry : System.getenv().entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith("CHAT_") && !key.equals("CHAT_CONFIG")) {
+                String name = key.substring("CHAT_".length()).toLowerCase(Locale.ROOT).replace('_', '-');
+                try {
+                    apply(config, name, entry.getValue());
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Переменная окружения пропущена: " + key + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq == -1) {
+                throw new IllegalArgumentException("Неизвестный аргумент: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            if (!name.equals("config")) {
+                apply(config, name, arg.substring(eq + 1));
+            }
+        }
+        validate(config);
+        return config;
+    }
+
+    public static void validate(ServerConfig config) {
+        require(config.getBufferSize() > 0, "buffer-size должен быть больше 0");
+        require(config.getMaxFrameSize() > 0, "max-frame-size должен быть больше 0");
+        require(config.getOutboundLowWatermark() >= 0
+                        && config.getOutboundLowWatermark() < config.getOutboundHighWatermark(),
+                "outbound-low-watermark должен быть меньше outbound-high-watermark");
+        // Иначе уже один кадр переполняет очередь и клиент отключается на первом же ответе
+        require(config.getMaxFrameSize() <= config.getOutboundHighWatermark(),
+                "max-frame-size не может быть больше outbound-high-watermark");
+        // Запись, не влезающая даже в пустой сегмент, молча пропускается
+        require(config.getWorkerThreads() >= 0, "workers не может быть меньше 0");
+        require(config.getRoomCapacity() > 0, "room-capacity должен быть больше 0");
+        require(config.getMainRoomCapacity() > 0, "main-room-capacity должен быть больше 0");
+        require(config.getHistorySize() >= 0, "history-size не может быть меньше 0");
+        require(config.getHistoryMaxBytesPerRoom() > 0, "history-max-bytes-per-room должен быть больше 0");
+        require(config.getHistoryMaxBytesTotal() >= config.getHistoryMaxBytesPerRoom(),
+                "history-max-bytes-total не может быть меньше history-max-bytes-per-room");
+        require(config.getHistoryIdleMillis() > 0, "history-idle должен быть больше 0");
+        require(config.getHeartbeatIntervalMillis() > 0, "heartbeat должен быть больше 0");
+        // Иначе PING уходит не раньше, чем соединение уже пора закрывать
+        require(config.getIdleTimeoutMillis() > config.getHeartbeatIntervalMillis(),
+                "idle-timeout должен быть больше heartbeat");
+        require(config.getHandshakeTimeoutMillis() > 0, "handshake-timeout должен быть больше 0");
+        require(config.getSessionResumeMillis() >= 0, "session-resume не может быть меньше 0");
+        require(config.getEventLogCapacity() > 0, "event-log-capacity должен быть больше 0");
+        require(config.getEventSampleLimit() >= 0, "event-sample-limit не может быть меньше 0");
+        require(config.getBufferPoolMaxBytes() >= 0, "buffer-pool-max-bytes не может быть меньше 0");
+        require(config.getClusterQueueCapacity() > 0, "cluster-queue-capacity должен быть больше 0");
+        require(config.getLogSegmentBytes() >= 2L * config.getMaxFrameSize(),
+                "log-segment-bytes должен вмещать хотя бы два кадра max-frame-size");
+        require(config.getLogIndexIntervalBytes() > 0, "log-index-interval должен быть больше 0");
+        require(config.getLogSegmentMaxAgeMillis() > 0, "log-segment-max-age должен быть больше 0");
+        require(config.getLogRetentionSegments() >= 0, "log-retention-segments не может быть меньше 0");
+        require(config.getLogQueueCapacity() > 0, "log-queue-capacity должен быть больше 0");
+        require(config.getFsyncIntervalMillis() > 0, "fsync-interval должен быть больше 0");
+        require(config.getFlushLatencyMicros() >= 0, "flush-latency-micros не может быть меньше 0");
+        require(config.getCompressionLevel() >= Deflater.NO_COMPRESSION
+                        && config.getCompressionLevel() <= Deflater.BEST_COMPRESSION,
+                "compression-level должен быть от 0 до 9");
+        require(config.getCompressionMinBytes() >= 0, "compression-min-bytes не может быть меньше 0");
+        require(config.getRoomListMaxPage() > 0, "room-list-max-page должен быть больше 0");
+        require(config.getRoomListRebuildMillis() >= 0, "room-list-rebuild-interval не может быть меньше 0");
+    }
+
+    private static void require(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    public static void apply(ServerConfig config, String name, String value) {
+        switch (name) {
+            case "port":
+                config.setPort(Integer.parseInt(value));
+                break;
+            case "max-clients":
+                config.setMaxClient(Integer.parseInt(value));
+                break;
+            case "max-clients-per-address":
+                config.setMaxClientsPerAddress(Integer.parseInt(value));
+                break;
+            case "accept-backlog":
+                config.setAcceptBacklog(Integer.parseInt(value));
+                break;
+            case "tcp-nodelay":
+                config.setTcpNoDelay(Boolean.parseBoolean(value));
+                break;
+            case "socket-send-buffer":
+                config.setSocketSendBuffer(Integer.parseInt(value));
+                break;
+            case "socket-receive-buffer":
+                config.setSocketReceiveBuffer(Integer.parseInt(value));
+                break;
+            case "buffer-size":
+                config.setBufferSize(Integer.parseInt(value));
+                break;
+            case "max-frame-size":
+                config.setMaxFrameSize(Integer.parseInt(value));
+                break;
+            case "outbound-high-watermark":
+                config.setOutboundHighWatermark(Integer.parseInt(value));
+                break;
+            case "outbound-low-watermark":
+                config.setOutboundLowWatermark(Integer.parseInt(value));
+                break;
+            case "slow-consumer-policy":
+                config.setSlowConsumerPolicy(SlowConsumerPolicy.valueOf(value.toUpperCase(Locale.ROOT)));
+                break;
+            case "workers":
+                config.setWorkerThreads(Integer.parseInt(value));
+                break;
+            case "mode":
+                config.setExecutionMode(value.equalsIgnoreCase("virtual")
+                        ? ExecutionMode.VIRTUAL_THREADS : ExecutionMode.valueOf(value.toUpperCase(Locale.ROOT)));
+                break;
+            case "room-capacity":
+                config.setRoomCapacity(Integer.parseInt(value));
+                break;
+            case "main-room-capacity":
+                config.setMainRoomCapacity(Integer.parseInt(value));
+                break;
+            case "history-size":
+                config.setHistorySize(Integer.parseInt(value));
+                break;
+            case "history-max-bytes-per-room":
+                config.setHistoryMaxBytesPerRoom(Integer.parseInt(value));
+                break;
+            case "history-max-bytes-total":
+                config.setHistoryMaxBytesTotal(Long.parseLong(value));
+                break;
+            case "history-idle":
+                config.setHistoryIdleMillis(Long.parseLong(value));
+                break;
+            case "log-dir":
+                config.setLogDirectory(value);
+                break;
+            case "log-segment-bytes":
+                config.setLogSegmentBytes(Integer.parseInt(value));
+                break;
+            case "log-segment-max-age":
+                config.setLogSegmentMaxAgeMillis(Long.parseLong(value));
+                break;
+            case "log-index-interval":
+                config.setLogIndexIntervalBytes(Integer.parseInt(value));
+                break;
+            case "log-retention-segments":
+                config.setLogRetentionSegments(Integer.parseInt(value));
+                break;
+            case "log-queue-capacity":
+                config.setLogQueueCapacity(Integer.parseInt(value));
+                break;
+            case "fsync-policy":
+                config.setFsyncPolicy(FsyncPolicy.valueOf(value.toUpperCase(Locale.ROOT).replace('-', '_')));
+                break;
+            case "fsync-interval":
+                config.setFsyncIntervalMillis(Long.parseLong(value));
+                break;
+            case "flush-latency-micros":
+                config.setFlushLatencyMicros(Long.parseLong(value));
+                break;
+            case "log-level":
+                config.setLogLevel(LogLevel.valueOf(value.toUpperCase(Locale.ROOT)));
+                break;
+            case "event-log-capacity":
+                config.setEventLogCapacity(Integer.parseInt(value));
+                break;
+            case "event-sample-limit":
+                config.setEventSampleLimit(Integer.parseInt(value));
+                break;
+            case "buffer-pool-max-bytes":
+                config.setBufferPoolMaxBytes(Long.parseLong(value));
+                break;
+            case "leak-detection":
+                config.setBufferLeakDetection(Boolean.parseBoolean(value));
+                break;
+            case "cluster-port":
+                config.setClusterPort(Integer.parseInt(value));
+                break;
+            case "peers":
+                config.setClusterPeers(Arrays.asList(value.split(",")));
+                break;
+            case "cluster-queue-capacity":
+                config.setClusterQueueCapacity(Integer.parseInt(value));
+                break;
+            case "node-id":
+                config.setNodeId(value);
+                break;
+            case "compression":
+                config.setCompressionEnabled(Boolean.parseBoolean(value));
+                break;
+            case "compression-level":
+                config.setCompressionLevel(Integer.parseInt(value));
+                break;
+            case "compression-min-bytes":
+                config.setCompressionMinBytes(Integer.parseInt(value));
+                break;
+            case "heartbeat":
+                config.setHeartbeatIntervalMillis(Long.parseLong(value));
+                break;
+            case "idle-timeout":
+                config.setIdleTimeoutMillis(Long.parseLong(value));
+                break;
+            case "handshake-timeout":
+                config.setHandshakeTimeoutMillis(Long.parseLong(value));
+                break;
+            case "client-rate":
+                config.setClientMessagesPerSecond(Double.parseDouble(value));
+                break;
+            case "client-burst":
+                config.setClientBurst(Integer.parseInt(value));
+                break;
+            case "room-rate":
+                config.setRoomMessagesPerSecond(Double.parseDouble(value));
+                break;
+            case "room-burst":
+                config.setRoomBurst(Integer.parseInt(value));
+                break;
+            case "rate-limit-policy":
+                config.setRateLimitPolicy(RateLimitPolicy.valueOf(value.toUpperCase(Locale.ROOT)));
+                break;
+            case "room-list-rebuild-interval":
+                config.setRoomListRebuildMillis(Long.parseLong(value));
+                break;
+            case "room-list-max-page":
+                config.setRoomListMaxPage(Integer.parseInt(value));
+                break;
+            case "snapshot-file":
+                config.setSnapshotFile(value.isEmpty() ? null : value);
+                break;
+            case "snapshot-interval":
+                config.setSnapshotIntervalMillis(Long.parseLong(value));
+                break;
+            case "session-resume":
+                config.setSessionResumeMillis(Long.parseLong(value));
+                break;
+            default:
+                throw new IllegalArgumentException("Неизвестная настройка: " + name);
+        }
+    }
+}
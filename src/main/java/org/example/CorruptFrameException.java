@@ -0,0 +1,12 @@
+package org.example;
+
+import java.io.IOException;
+
+// Кадр не разбирается: длина или поля не сходятся с его размером
+public class CorruptFrameException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public CorruptFrameException() {
+        super("Повреждённый кадр");
+    }
+}
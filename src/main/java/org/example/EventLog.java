@@ -0,0 +1,242 @@
+package org.example;
+
+import java.io.PrintStream;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Журнал событий сервера. Циклы событий только заполняют запись фиксированного размера
+// в кольцевом буфере (без блокировок и без склейки строк); форматирует и печатает
+// пачками отдельный поток. При переполнении записи отбрасываются, цикл никогда не ждёт консоль
+public class EventLog {
+    private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final long IDLE_PARK_NANOS = 5_000_000L;
+
+    // Поля записи; sequence - номер позиции, для которой слот свободен (+1 - заполнен)
+    private static final class Slot {
+        volatile long sequence;
+        long time;
+        EventType type;
+        Object a;
+        Object b;
+        long value;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong tail;
+    private long head;
+
+    private final LogLevel level;
+    private final int sampleLimit;
+    private final AtomicLongArray seen;
+    private final long[] windowStart;
+    private volatile long[] windowLimit;
+    private final AtomicLong dropped;
+
+    private final PrintStream out;
+    private final Thread writer;
+    private volatile boolean running;
+
+    public EventLog(ServerConfig config, PrintStream out) {
+        int capacity = Integer.highestOneBit(Math.max(2, config.getEventLogCapacity() - 1)) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot();
+            slots[i].sequence = i;
+        }
+        this.mask = capacity - 1;
+        this.tail = new AtomicLong();
+
+        this.level = config.getLogLevel();
+        this.sampleLimit = config.getEventSampleLimit();
+        int types = EventType.values().length;
+        this.seen = new AtomicLongArray(types);
+        this.windowStart = new long[types];
+        this.windowLimit = new long[types];
+        Arrays.fill(windowLimit, sampleLimit);
+        this.dropped = new AtomicLong();
+
+        this.out = out;
+        this.writer = new Thread(this::runWriter, "chat-event-log");
+        this.writer.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        writer.start();
+    }
+
+    public boolean isEnabled(EventType type) {
+        return type.getLevel().compareTo(level) >= 0;
+    }
+
+    public void log(EventType type, long value) {
+        log(type, null, null, value);
+    }
+
+    public void log(EventType type, Object a) {
+        log(type, a, null, 0);
+    }
+
+    public void log(EventType type, Object a, long value) {
+        log(type, a, null, value);
+    }
+
+    public void log(EventType type, Object a, Object b) {
+        log(type, a, b, 0);
+    }
+
+    // Можно вызывать из любого потока. Объекты a и b форматируются позже в потоке записи,
+    // поэтому передавать можно только неизменяемые значения (строки, числа)
+    public void log(EventType type, Object a, Object b, long value) {
+        if (!isEnabled(type)) {
+            return;
+        }
+        if (type.isSampled() && sampleLimit > 0 && seen.incrementAndGet(type.ordinal()) > windowLimit[type.ordinal()]) {
+            return;
+        }
+
+        long pos = tail.get();
+        Slot slot;
+        while (true) {
+            slot = slots[(int) pos & mask];
+            long diff = slot.sequence - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return;
+            } else {
+                pos = tail.get();
+            }
+        }
+
+        slot.time = System.currentTimeMillis();
+        slot.type = type;
+        slot.a = a;
+        slot.b = b;
+        slot.value = value;
+        slot.sequence = pos + 1;
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // Допечатывает то, что уже в буфере
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runWriter() {
+        StringBuilder batch = new StringBuilder(16 * 1024);
+        long nextWindow = System.currentTimeMillis() + 1000;
+        long reportedDrops = 0;
+
+        while (true) {
+            boolean stopping = !running;
+            int count = drain(batch);
+
+            long now = System.currentTimeMillis();
+            if (now >= nextWindow || stopping) {
+                nextWindow = now + 1000;
+                rollSampleWindow(batch, now);
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    appendLine(batch, now, LogLevel.WARN).append("Журнал событий переполнен, пропущено записей: ")
+                            .append(drops - reportedDrops).append('\n');
+                    reportedDrops = drops;
+                }
+            }
+
+            if (batch.length() > 0) {
+                out.print(batch);
+                out.flush();
+                batch.setLength(0);
+            }
+            if (stopping) {
+                return;
+            }
+            if (count == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private int drain(StringBuilder batch) {
+        int count = 0;
+        while (true) {
+            Slot slot = slots[(int) head & mask];
+            if (slot.sequence != head + 1) {
+                return count;
+            }
+            format(batch, slot);
+            slot.a = null;
+            slot.b = null;
+            slot.sequence = head + slots.length;
+            head++;
+            count++;
+        }
+    }
+
+    // Раз в секунду: сколько частых событий не попало в журнал, и новый лимит на следующую секунду
+    private void rollSampleWindow(StringBuilder batch, long now) {
+        if (sampleLimit <= 0) {
+            return;
+        }
+        long[] limits = new long[windowStart.length];
+        for (EventType type : EventType.values()) {
+            int i = type.ordinal();
+            long total = seen.get(i);
+            long suppressed = total - windowStart[i] - sampleLimit;
+            if (suppressed > 0) {
+                appendLine(batch, now, type.getLevel()).append("Не записано событий ").append(type.name())
+                        .append(": ").append(suppressed).append('\n');
+            }
+            windowStart[i] = total;
+            limits[i] = total + sampleLimit;
+        }
+        windowLimit = limits;
+    }
+
+    private void format(StringBuilder batch, Slot slot) {
+        appendLine(batch, slot.time, slot.type.getLevel());
+        String template = slot.type.getTemplate();
+        for (int i = 0; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '{' && i + 2 < template.length() && template.charAt(i + 2) == '}') {
+                char field = template.charAt(i + 1);
+                if (field == 'a') {
+                    batch.append(slot.a);
+                } else if (field == 'b') {
+                    batch.append(slot.b);
+                } else {
+                    batch.append(slot.value);
+                }
+                i += 2;
+            } else {
+                batch.append(c);
+            }
+        }
+        batch.append('\n');
+    }
+
+    private static StringBuilder appendLine(StringBuilder batch, long time, LogLevel level) {
+        TIME.formatTo(Instant.ofEpochMilli(time), batch);
+        return batch.append(' ').append(level).append(' ');
+    }
+}
@@ -0,0 +1,53 @@
+package org.example;
+
+// Шаблон строки: {a} и {b} - текстовые поля записи, {v} - числовое.
+// sampled - частые события: сверх лимита в секунду не пишутся, а подсчитываются
+public enum EventType {
+    SERVER_STARTED(LogLevel.INFO, false, "Сервер запущен на порту {v}"),
+    SERVER_MODE(LogLevel.INFO, false, "Режим: {a}"),
+    SERVER_WORKERS(LogLevel.INFO, false, "Рабочих циклов: {v}"),
+    MESSAGE_LOG_OPENED(LogLevel.INFO, false, "Журнал сообщений: {a}"),
+    MESSAGE_LOG_ERROR(LogLevel.ERROR, false, "Ошибка журнала сообщений: {a}"),
+    SNAPSHOT_LOADED(LogLevel.INFO, false, "Снимок состояния {a} загружен за {b} мс, комнат: {v}"),
+    SNAPSHOT_WRITTEN(LogLevel.DEBUG, false, "Снимок состояния {a} записан за {b} мс, комнат: {v}"),
+    SNAPSHOT_ERROR(LogLevel.ERROR, false, "Ошибка снимка состояния {a}: {b}"),
+    JMX_ERROR(LogLevel.WARN, false, "Не удалось зарегистрировать метрики в JMX: {a}"),
+    CLIENT_CONNECTED(LogLevel.INFO, true, "Новый клиент подключился. Всего: {v}"),
+    CLIENT_REJECTED(LogLevel.WARN, true, "Подключение с {a} отклонено: {b}"),
+    CLIENT_DISCONNECTED(LogLevel.INFO, true, "Клиент отключился: {a}. Осталось: {v}"),
+    USERNAME_SET(LogLevel.INFO, true, "Клиент установил имя: {a}"),
+    SESSION_RESUMED(LogLevel.INFO, true, "Клиент вернулся в сессию: {a}"),
+    ROOM_CREATED(LogLevel.INFO, true, "Создана комната: {a}"),
+    ROOM_JOINED(LogLevel.INFO, true, "{a} вошёл в комнату: {b}"),
+    HANDSHAKE_TIMEOUT(LogLevel.INFO, true, "Клиент не назвал имя вовремя, отключаем"),
+    IDLE_TIMEOUT(LogLevel.INFO, true, "Клиент не отвечает на PING, отключаем: {a}"),
+    RATE_LIMITED(LogLevel.WARN, true, "Клиент превысил лимит сообщений, отключаем: {a}"),
+    SLOW_CONSUMER(LogLevel.WARN, true, "Клиент не успевает читать сообщения, отключаем: {a}"),
+    BUFFER_LEAK(LogLevel.ERROR, true, "Буфер не возвращён в пул: {a}"),
+    CLUSTER_LISTENING(LogLevel.INFO, false, "Узел кластера {a} ждёт узлы на порту {v}"),
+    CLUSTER_PEER_CONNECTED(LogLevel.INFO, false, "Подключён узел кластера {a} ({b})"),
+    CLUSTER_PEER_LOST(LogLevel.WARN, false, "Потеряна связь с узлом кластера {a} ({b})"),
+    CLUSTER_FRAME_SKIPPED(LogLevel.WARN, true, "Пропущен слишком длинный кадр от узла кластера {a}: {v} байт");
+
+    private final LogLevel level;
+    private final boolean sampled;
+    private final String template;
+
+    EventType(LogLevel level, boolean sampled, String template) {
+        this.level = level;
+        this.sampled = sampled;
+        this.template = template;
+    }
+
+    public LogLevel getLevel() {
+        return level;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public String getTemplate() {
+        return template;
+    }
+}
@@ -0,0 +1,6 @@
+package org.example;
+
+public enum ExecutionMode {
+    SELECTOR,        // неблокирующий ввод-вывод на циклах событий (ServerEventHandler)
+    VIRTUAL_THREADS  // виртуальный поток на соединение и блокирующие каналы
+}
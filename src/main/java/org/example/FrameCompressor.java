@@ -0,0 +1,108 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.Deflater;
+
+// Сжатие исходящих кадров для клиентов, договорившихся о compress=deflate.
+// Формат потока после согласования: [int заголовок][данные], где заголовок - длина данных,
+// а старший бит означает "без сжатия". Сжатые данные - raw deflate с общим словарём,
+// завершённый SYNC_FLUSH и не зависящий от предыдущих кадров: поэтому один сжатый кадр
+// можно раздать всем участникам комнаты
+public class FrameCompressor {
+    public static final int STORED = 0x80000000;
+    public static final int HEADER_SIZE = 4;
+
+    // Частые куски протокола; самые частые - ближе к концу, до них короче ссылки
+    public static final byte[] DICTIONARY = (
+            "ERROR:Не удалось войти в комнатуERROR:Вы не в комнате"
+            + "OK:Комната создана - OK:Имя установлено - ROOMS:Главная [JOINED:"
+            + "FF0000:0000FF:00AA00:FF8800:AA00AA:008888:CC0066:6600CC:"
+            + " покинул комнату\nSYSTEM: вошёл в комнату\nCHAT:"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    private static final int MAX_IDLE_DEFLATERS = 64;
+
+    private final BufferPool bufferPool;
+    private final Metrics metrics;
+    private final int level;
+    private final int minBytes;
+    // Deflater держит ~256 КБ нативной памяти: переиспользуем, а не заводим на поток
+    private final ConcurrentLinkedQueue<Deflater> idle;
+
+    public FrameCompressor(ServerConfig config, BufferPool bufferPool, Metrics metrics) {
+        this.bufferPool = bufferPool;
+        this.metrics = metrics;
+        this.level = config.getCompressionLevel();
+        this.minBytes = config.getCompressionMinBytes();
+        this.idle = new ConcurrentLinkedQueue<>();
+    }
+
+    // Кадры склеиваются в одну запись; их позиции не меняются, ссылки остаются у вызывающего
+    public PooledBuffer compress(PooledBuffer... frames) {
+        int length = 0;
+        for (PooledBuffer frame : frames) {
+            length += frame.buffer().remaining();
+        }
+
+        if (length >= minBytes) {
+            long start = System.nanoTime();
+            PooledBuffer compressed = deflate(frames, length);
+            if (compressed != null) {
+                metrics.frameCompressed(length, compressed.buffer().remaining() - HEADER_SIZE, System.nanoTime() - start);
+                return compressed;
+            }
+        }
+        return stored(frames, length);
+    }
+
+    // null - сжатие не дало выигрыша
+    private PooledBuffer deflate(PooledBuffer[] frames, int length) {
+        Deflater deflater = idle.poll();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+        }
+        PooledBuffer pooled = bufferPool.acquire(HEADER_SIZE + length);
+        ByteBuffer out = pooled.buffer();
+        out.position(HEADER_SIZE);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            for (PooledBuffer frame : frames) {
+                deflater.setInput(frame.buffer().duplicate());
+                while (!deflater.needsInput() && out.hasRemaining()) {
+                    deflater.deflate(out, Deflater.NO_FLUSH);
+                }
+            }
+            if (out.hasRemaining()) {
+                deflater.deflate(out, Deflater.SYNC_FLUSH);
+            }
+            // Выход заполнил буфер целиком - значит, не меньше исходного
+            if (!out.hasRemaining() || !deflater.needsInput()) {
+                pooled.release();
+                return null;
+            }
+            out.putInt(0, out.position() - HEADER_SIZE);
+            out.flip();
+            return pooled;
+        } finally {
+            deflater.reset();
+            if (idle.size() < MAX_IDLE_DEFLATERS) {
+                idle.offer(deflater);
+            } else {
+                deflater.end();
+            }
+        }
+    }
+
+    private PooledBuffer stored(PooledBuffer[] frames, int length) {
+        PooledBuffer pooled = bufferPool.acquire(HEADER_SIZE + length);
+        ByteBuffer out = pooled.buffer();
+        out.putInt(length | STORED);
+        for (PooledBuffer frame : frames) {
+            out.put(frame.buffer().duplicate());
+        }
+        out.flip();
+        return pooled;
+    }
+}
@@ -0,0 +1,12 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public interface FrameDecoder {
+    // Забирает из in все завершённые кадры, незавершённый хвост остаётся до следующего чтения
+    void decode(ByteBuffer in, MessageHandler handler) throws IOException;
+
+    // Вернуть в пул буфер недочитанного кадра; вызывается при закрытии соединения
+    void release();
+}
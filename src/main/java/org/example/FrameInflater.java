@@ -0,0 +1,85 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+// Клиентская сторона FrameCompressor: собирает записи [int заголовок][данные] из потока
+// и возвращает текст целиком пришедших записей
+public class FrameInflater {
+    private static final int MAX_RECORD = 16 * 1024 * 1024;
+
+    private final Inflater inflater;
+    private final ByteArrayOutputStream text;
+    private final byte[] chunk;
+    private ByteBuffer pending;
+
+    private long compressedBytes;
+    private long plainBytes;
+
+    public FrameInflater() {
+        this.inflater = new Inflater(true);
+        this.text = new ByteArrayOutputStream();
+        this.chunk = new byte[8192];
+        this.pending = ByteBuffer.allocate(8192);
+    }
+
+    // Забирает все байты из in; незаконченная запись ждёт следующего вызова
+    public String inflate(ByteBuffer in) throws IOException {
+        compressedBytes += in.remaining();
+        if (pending.remaining() < in.remaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + in.remaining()));
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        pending.put(in);
+        pending.flip();
+
+        text.reset();
+        while (pending.remaining() >= FrameCompressor.HEADER_SIZE) {
+            int header = pending.getInt(pending.position());
+            int length = header & ~FrameCompressor.STORED;
+            if (length > MAX_RECORD) {
+                throw new IOException("Слишком длинная запись: " + length);
+            }
+            if (pending.remaining() < FrameCompressor.HEADER_SIZE + length) {
+                break;
+            }
+            pending.position(pending.position() + FrameCompressor.HEADER_SIZE);
+
+            if ((header & FrameCompressor.STORED) != 0) {
+                text.write(pending.array(), pending.position(), length);
+            } else {
+                inflateRecord(pending.array(), pending.position(), length);
+            }
+            pending.position(pending.position() + length);
+        }
+        pending.compact();
+
+        plainBytes += text.size();
+        return text.toString(StandardCharsets.UTF_8);
+    }
+
+    private void inflateRecord(byte[] data, int offset, int length) throws IOException {
+        inflater.reset();
+        inflater.setDictionary(FrameCompressor.DICTIONARY);
+        inflater.setInput(data, offset, length);
+        try {
+            while (!inflater.needsInput()) {
+                int count = inflater.inflate(chunk);
+                text.write(chunk, 0, count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Повреждённые сжатые данные", e);
+        }
+    }
+
+    // Во сколько раз сжатие уменьшило трафик от сервера
+    public double getRatio() {
+        return compressedBytes == 0 ? 0 : (double) plainBytes / compressedBytes;
+    }
+}
@@ -0,0 +1,11 @@
+package org.example;
+
+import java.io.IOException;
+
+public class FrameTooLongException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    public FrameTooLongException(int maxFrameSize) {
+        super("Сообщение длиннее " + maxFrameSize + " байт");
+    }
+}
@@ -0,0 +1,7 @@
+package org.example;
+
+public enum FsyncPolicy {
+    EVERY_BATCH, // force() после каждой пачки записей фонового потока
+    INTERVAL,    // force() не чаще fsyncIntervalMillis
+    NEVER        // сброс на диск остаётся за операционной системой
+}
@@ -0,0 +1,64 @@
+package org.example;
+
+// Проверка простоя соединений по таймерам колеса. На сессию всегда стоит один таймер:
+// чтение его не переставляет, а только обновляет время последней активности, и сработавший
+// таймер сам решает, пора ли слать PING, отключать или просто перенести проверку
+public class HeartbeatMonitor {
+    private final TimerWheel wheel;
+    private final ClientManager clientManager;
+    private final long heartbeatMillis;
+    private final long idleTimeoutMillis;
+    private final long handshakeTimeoutMillis;
+
+    public HeartbeatMonitor(TimerWheel wheel, ClientManager clientManager, ServerConfig config) {
+        this.wheel = wheel;
+        this.clientManager = clientManager;
+        this.heartbeatMillis = config.getHeartbeatIntervalMillis();
+        this.idleTimeoutMillis = config.getIdleTimeoutMillis();
+        this.handshakeTimeoutMillis = config.getHandshakeTimeoutMillis();
+    }
+
+    public void watch(ClientSession session) {
+        wheel.schedule(Math.min(heartbeatMillis, handshakeTimeoutMillis), () -> check(session));
+    }
+
+    private void check(ClientSession session) {
+        if (session.isClosed()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long idle = now - session.getLastReadMillis();
+        long sinceConnect = now - session.getConnectedMillis();
+        boolean anonymous = session.getUsername() == null;
+
+        if (anonymous && sinceConnect >= handshakeTimeoutMillis) {
+            timedOut(session, EventType.HANDSHAKE_TIMEOUT);
+            return;
+        }
+        if (idle >= idleTimeoutMillis) {
+            timedOut(session, EventType.IDLE_TIMEOUT);
+            return;
+        }
+
+        long next;
+        if (idle >= heartbeatMillis) {
+            if (!session.isPingSent()) {
+                session.setPingSent(true);
+                clientManager.sendToClient(session, "PING:");
+            }
+            next = idleTimeoutMillis - idle;
+        } else {
+            next = heartbeatMillis - idle;
+        }
+        if (anonymous) {
+            next = Math.min(next, handshakeTimeoutMillis - sinceConnect);
+        }
+        wheel.schedule(next, () -> check(session));
+    }
+
+    private void timedOut(ClientSession session, EventType type) {
+        clientManager.getMetrics().connectionTimedOut();
+        clientManager.getEventLog().log(type, session.getUsername());
+        session.getOwner().close(session);
+    }
+}
@@ -0,0 +1,109 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class LineDecoder implements FrameDecoder {
+    private final BufferPool pool;
+    private final int maxFrameSize;
+    private final Message message;
+    // Начало строки, разрезанной между чтениями; буфер берётся из пула только на это время
+    private PooledBuffer frame;
+
+    public LineDecoder(int maxFrameSize, BufferPool pool) {
+        this.pool = pool;
+        this.maxFrameSize = maxFrameSize;
+        this.message = new Message();
+    }
+
+    @Override
+    public void decode(ByteBuffer in, MessageHandler handler) throws IOException {
+        while (in.hasRemaining()) {
+            int end = indexOfNewline(in);
+
+            // Строка целиком в буфере чтения - разбираем на месте, без копирования.
+            // Буфер чтения может быть больше maxFrameSize, поэтому длина проверяется и здесь
+            if (end != -1 && frame == null) {
+                int start = in.position();
+                if (end - start > maxFrameSize) {
+                    in.position(in.limit());
+                    throw new FrameTooLongException(maxFrameSize);
+                }
+                in.position(end + 1);
+                parse(in, start, end, handler);
+                continue;
+            }
+
+            if (frame == null) {
+                frame = pool.acquire(maxFrameSize);
+            }
+            ByteBuffer pending = frame.buffer();
+            int chunk = (end == -1 ? in.limit() : end) - in.position();
+
+            if (chunk > pending.remaining()) {
+                release();
+                in.position(in.limit());
+                throw new FrameTooLongException(maxFrameSize);
+            }
+
+            int oldLimit = in.limit();
+            in.limit(in.position() + chunk);
+            pending.put(in);
+            in.limit(oldLimit);
+
+            if (end == -1) {
+                return;
+            }
+
+            in.get();
+            PooledBuffer complete = frame;
+            frame = null;
+            try {
+                parse(pending, 0, pending.position(), handler);
+            } finally {
+                complete.release();
+            }
+        }
+    }
+
+    @Override
+    public void release() {
+        if (frame != null) {
+            frame.release();
+            frame = null;
+        }
+    }
+
+    private void parse(ByteBuffer buf, int start, int end, MessageHandler handler) throws IOException {
+        while (start < end && (buf.get(start) & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (buf.get(end - 1) & 0xFF) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return;
+        }
+
+        int colon = indexOf(buf, start, end, (byte) ':');
+        if (colon == -1) {
+            message.wrap(Command.MSG, buf, start, end - start);
+        } else {
+            message.wrap(Command.fromBytes(buf, start, colon - start), buf, colon + 1, end - colon - 1);
+        }
+        handler.onMessage(message);
+    }
+
+    private static int indexOf(ByteBuffer buf, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (buf.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfNewline(ByteBuffer in) {
+        return indexOf(in, in.position(), in.limit(), (byte) '\n');
+    }
+}
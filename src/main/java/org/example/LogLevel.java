@@ -0,0 +1,8 @@
+package org.example;
+
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR
+}
@@ -0,0 +1,310 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.zip.CRC32C;
+
+/*
+ * Отображённый в память файл журнала комнаты.
+ * Запись: int длина данных, int CRC32C данных, long время, данные.
+ * Нулевая длина означает конец записанной части.
+ * Рядом лежит разреженный индекс: пары (номер записи от начала сегмента, позиция)
+ * примерно через каждые indexIntervalBytes байт журнала.
+ * Каналы закрываются сразу после map: отображение живёт без них, и сегменты не держат дескрипторов.
+ * Активный сегмент отображается с небольшого размера и растёт удвоением до segmentBytes;
+ * закрытый (seal) отображения не держит, readLast отображает его файл на время чтения.
+ */
+public class LogSegment {
+    private static final int HEADER = 16;
+    private static final int INDEX_ENTRY = 8;
+    private static final int INITIAL_BYTES = 64 * 1024;
+    private static final byte[] ZEROS = new byte[8192];
+
+    private final Path logFile;
+    private final Path indexFile;
+    private final long baseOffset;
+    private final long createdAt;
+    private final int segmentBytes;
+    private final int indexIntervalBytes;
+    private final CRC32C crc;
+
+    // null у закрытого сегмента
+    private volatile MappedByteBuffer log;
+    private volatile MappedByteBuffer index;
+
+    // -1 - конец неизвестен (сегмент найден при старте и не открывался), читаем до нулевой длины
+    private volatile int end;
+    private volatile long nextOffset;
+    private int indexEntries;
+    private int lastIndexedPosition;
+    private boolean dirty;
+
+    private LogSegment(Path dir, long baseOffset, int segmentBytes, int indexIntervalBytes, long createdAt) {
+        this.logFile = dir.resolve(fileName(baseOffset, ".log"));
+        this.indexFile = dir.resolve(fileName(baseOffset, ".idx"));
+        this.baseOffset = baseOffset;
+        this.segmentBytes = segmentBytes;
+        this.indexIntervalBytes = indexIntervalBytes;
+        this.crc = new CRC32C();
+        this.createdAt = createdAt;
+        this.nextOffset = baseOffset;
+    }
+
+    public static LogSegment create(Path dir, long baseOffset, int segmentBytes, int indexIntervalBytes) throws IOException {
+        LogSegment segment = new LogSegment(dir, baseOffset, segmentBytes, indexIntervalBytes, System.currentTimeMillis());
+        segment.map(Math.min(INITIAL_BYTES, segmentBytes));
+        return segment;
+    }
+
+    // Последний сегмент комнаты после перезапуска: в него продолжаем писать
+    public static LogSegment open(Path dir, long baseOffset, int segmentBytes, int indexIntervalBytes) throws IOException {
+        Path logFile = dir.resolve(fileName(baseOffset, ".log"));
+        LogSegment segment = new LogSegment(dir, baseOffset, segmentBytes, indexIntervalBytes,
+                Files.getLastModifiedTime(logFile).toMillis());
+        segment.map((int) Math.max(Files.size(logFile), HEADER));
+        segment.recover();
+        return segment;
+    }
+
+    // Более старый сегмент: записи в нём идут до начала следующего, файл не отображается
+    public static LogSegment sealed(Path dir, long baseOffset, long nextOffset, int indexIntervalBytes) {
+        LogSegment segment = new LogSegment(dir, baseOffset, 0, indexIntervalBytes, 0);
+        segment.nextOffset = nextOffset;
+        segment.end = -1;
+        return segment;
+    }
+
+    public static String fileName(long baseOffset, String suffix) {
+        return String.format(Locale.ROOT, "%020d%s", baseOffset, suffix);
+    }
+
+    // Индекс отображается раньше журнала (порядок важен для readLast)
+    private void map(int size) throws IOException {
+        index = map(indexFile, FileChannel.MapMode.READ_WRITE, (size / indexIntervalBytes + 2L) * INDEX_ENTRY);
+        log = map(logFile, FileChannel.MapMode.READ_WRITE, size);
+    }
+
+    private static MappedByteBuffer map(Path file, FileChannel.MapMode mode, long size) throws IOException {
+        StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+                ? new StandardOpenOption[] {StandardOpenOption.READ}
+                : new StandardOpenOption[] {StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE};
+        try (FileChannel channel = FileChannel.open(file, options)) {
+            return channel.map(mode, 0, mode == FileChannel.MapMode.READ_ONLY ? Math.min(size, channel.size()) : size);
+        }
+    }
+
+    // Восстановление после сбоя: доверяем индексу, но каждую запись после последней
+    // точки индекса проверяем по CRC; всё, что после первой битой записи, обнуляем
+    private void recover() {
+        int entries = countEntries(index);
+
+        while (true) {
+            int relative = entries == 0 ? 0 : index.getInt((entries - 1) * INDEX_ENTRY);
+            int position = entries == 0 ? 0 : index.getInt((entries - 1) * INDEX_ENTRY + 4);
+            if (entries == 0 || isValidRecord(position)) {
+                indexEntries = entries;
+                lastIndexedPosition = position;
+                scanFrom(position, baseOffset + relative);
+                break;
+            }
+            entries--;
+        }
+
+        zero(index, indexEntries * INDEX_ENTRY);
+        zero(log, end);
+        dirty = true;
+    }
+
+    // Хвост до конца отображения обнуляется кусками, а не по байту
+    private static void zero(ByteBuffer buffer, int from) {
+        for (int position = from; position < buffer.capacity(); position += ZEROS.length) {
+            buffer.put(position, ZEROS, 0, Math.min(ZEROS.length, buffer.capacity() - position));
+        }
+    }
+
+    private static int countEntries(ByteBuffer index) {
+        int entries = 0;
+        while ((entries + 1) * INDEX_ENTRY <= index.capacity()) {
+            int position = index.getInt(entries * INDEX_ENTRY + 4);
+            if (entries > 0 && position == 0) {
+                break;
+            }
+            entries++;
+        }
+        return entries;
+    }
+
+    private void scanFrom(int position, long offset) {
+        while (isValidRecord(position)) {
+            position += HEADER + log.getInt(position);
+            offset++;
+        }
+        end = position;
+        nextOffset = offset;
+    }
+
+    private boolean isValidRecord(int position) {
+        if (position + HEADER > log.capacity()) {
+            return false;
+        }
+        int length = log.getInt(position);
+        if (length <= 0 || position + HEADER + length > log.capacity()) {
+            return false;
+        }
+        crc.reset();
+        crc.update(log.slice(position + HEADER, length));
+        return (int) crc.getValue() == log.getInt(position + 4);
+    }
+
+    // Сегмент, открытый после перезапуска, мог быть создан с большим segmentBytes
+    public boolean hasRoomFor(int length) {
+        return (long) end + HEADER + length <= Math.max(segmentBytes, log.capacity());
+    }
+
+    // Вызывается только из фонового потока журнала
+    public long append(ByteBuffer data, long timestamp) throws IOException {
+        int position = end;
+        int length = data.remaining();
+        if (position + HEADER + length > log.capacity()) {
+            grow(position + HEADER + length);
+        }
+        MappedByteBuffer log = this.log;
+
+        log.put(position + HEADER, data, data.position(), length);
+        crc.reset();
+        crc.update(data.duplicate());
+        log.putLong(position + 8, timestamp);
+        log.putInt(position + 4, (int) crc.getValue());
+        log.putInt(position, length);
+
+        if (indexEntries == 0 || position - lastIndexedPosition >= indexIntervalBytes) {
+            int slot = indexEntries * INDEX_ENTRY;
+            if (slot + INDEX_ENTRY <= index.capacity()) {
+                index.putInt(slot, (int) (nextOffset - baseOffset));
+                index.putInt(slot + 4, position);
+                indexEntries++;
+                lastIndexedPosition = position;
+            }
+        }
+
+        long offset = nextOffset;
+        dirty = true;
+        end = position + HEADER + length;
+        nextOffset = offset + 1;
+        return offset;
+    }
+
+    // Прежнее отображение остаётся действительным у читателей, успевших его взять
+    private void grow(int required) throws IOException {
+        int size = log.capacity();
+        while (size < required) {
+            size = (int) Math.min((long) size * 2, segmentBytes);
+        }
+        map(size);
+    }
+
+    public void force() {
+        if (dirty) {
+            dirty = false;
+            log.force();
+            index.force();
+        }
+    }
+
+    // Данные последних count записей сегмента (срезы отображённой памяти, без копирования)
+    public int readLast(int count, ByteBuffer[] out, int outEnd) throws IOException {
+        long last = nextOffset;
+        int limit = end;
+        if (count <= 0 || last == baseOffset) {
+            return 0;
+        }
+
+        // Индекс берётся раньше журнала, а seal обнуляет их в обратном порядке:
+        // при непустом журнале индекс тоже на месте
+        ByteBuffer index = this.index;
+        ByteBuffer log = this.log;
+        int entries = Math.min(indexEntries, index == null ? 0 : index.capacity() / INDEX_ENTRY);
+        if (log == null) {
+            try {
+                log = map(logFile, FileChannel.MapMode.READ_ONLY, Long.MAX_VALUE);
+                index = map(indexFile, FileChannel.MapMode.READ_ONLY, Long.MAX_VALUE);
+            } catch (NoSuchFileException e) {
+                // Сегмент удалён по сроку хранения, пока его читали
+                return 0;
+            }
+            entries = countEntries(index);
+            if (limit < 0) {
+                limit = log.capacity();
+            }
+        }
+
+        int entry = entries - 1;
+        while (entry > 0 && (index.getInt(entry * INDEX_ENTRY + 4) >= limit
+                || last - (baseOffset + index.getInt(entry * INDEX_ENTRY)) < count)) {
+            entry--;
+        }
+        int position = entry < 0 ? 0 : index.getInt(entry * INDEX_ENTRY + 4);
+
+        ByteBuffer[] ring = new ByteBuffer[count];
+        int seen = 0;
+        while (position + HEADER <= limit) {
+            int length = log.getInt(position);
+            if (length <= 0 || position + HEADER + length > limit) {
+                break;
+            }
+            ring[seen % count] = log.slice(position + HEADER, length).asReadOnlyBuffer();
+            seen++;
+            position += HEADER + length;
+        }
+
+        int taken = Math.min(seen, count);
+        for (int i = 0; i < taken; i++) {
+            out[outEnd - taken + i] = ring[(seen - taken + i) % count];
+        }
+        return taken;
+    }
+
+    public long getBaseOffset() {
+        return baseOffset;
+    }
+
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public boolean isEmpty() {
+        return nextOffset == baseOffset;
+    }
+
+    // Запись в сегмент закончена: сбросить на диск и отпустить отображение.
+    // Память освободит сборщик мусора, когда не останется срезов, выданных readLast
+    public void seal() {
+        if (log == null) {
+            return;
+        }
+        force();
+        log = null;
+        index = null;
+    }
+
+    public void delete() throws IOException {
+        seal();
+        Files.deleteIfExists(logFile);
+        Files.deleteIfExists(indexFile);
+    }
+
+    public void close() {
+        seal();
+    }
+}
@@ -1,22 +1,86 @@
 package org.example;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public class Message {
     private String command;  // USERNAME, CREATE, JOIN, LEAVE, LIST, MSG
     private String data;
+    private Command type;
+    private ByteBuffer payload;
+    private int payloadOffset;
+    private int payloadLength;
+
+    public Message() {
+    }
 
     public Message(String command, String data) {
         this.command = command;
         this.data = data;
+        this.type = Command.fromName(command);
+    }
+
+    public Message(Command type, String data) {
+        this.command = type == null ? null : type.name();
+        this.data = data;
+        this.type = type;
+    }
+
+    // Переиспользуемое представление кадра: данные остаются в буфере декодера
+    // и превращаются в строку только если их запросят
+    public void wrap(Command type, ByteBuffer payload, int offset, int length) {
+        this.type = type;
+        this.command = null;
+        this.data = null;
+        this.payload = payload;
+        this.payloadOffset = offset;
+        this.payloadLength = length;
     }
 
     public String getCommand() {
+        if (command == null && type != null) {
+            command = type.name();
+        }
         return command;
     }
 
     public String getData() {
+        if (data == null && payload != null) {
+            if (payload.hasArray()) {
+                data = new String(payload.array(), payload.arrayOffset() + payloadOffset, payloadLength, StandardCharsets.UTF_8);
+            } else {
+                byte[] bytes = new byte[payloadLength];
+                payload.get(payloadOffset, bytes);
+                data = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
         return data;
     }
 
+    public int getPayloadLength() {
+        wrapData();
+        return payloadLength;
+    }
+
+    public void copyPayload(ByteBuffer dst) {
+        wrapData();
+        dst.put(dst.position(), payload, payloadOffset, payloadLength);
+        dst.position(dst.position() + payloadLength);
+    }
+
+    private void wrapData() {
+        if (payload == null) {
+            byte[] bytes = data.getBytes(StandardCharsets.UTF_8);
+            payload = ByteBuffer.wrap(bytes);
+            payloadOffset = 0;
+            payloadLength = bytes.length;
+        }
+    }
+
+    public Command getType() {
+        return type;
+    }
+
     public static Message fromProtocol(String line) {
         int colonIndex = line.indexOf(':');
         if (colonIndex == -1) {
@@ -0,0 +1,8 @@
+package org.example;
+
+import java.io.IOException;
+
+public interface MessageHandler {
+    // msg переиспользуется декодером: сохранять ссылку на него после возврата нельзя
+    void onMessage(Message msg) throws IOException;
+}
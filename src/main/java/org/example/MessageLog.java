@@ -0,0 +1,204 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// Журнал сообщений комнат на диске. Циклы событий только кладут кадры в очередь,
+// запись в отображённые сегменты и force() делает отдельный поток пачками
+public class MessageLog {
+    private static final int BATCH_SIZE = 1024;
+
+    private final Path directory;
+    private final ServerConfig config;
+    private final EventLog eventLog;
+    private final Map<String, RoomLog> rooms;
+    private final BlockingQueue<Entry> queue;
+    private final AtomicLong dropped;
+    private final Thread flusher;
+    private volatile boolean running;
+    private long lastForce;
+
+    private MessageLog(Path directory, ServerConfig config, EventLog eventLog) {
+        this.directory = directory;
+        this.config = config;
+        this.eventLog = eventLog;
+        this.rooms = new ConcurrentHashMap<>();
+        this.queue = new ArrayBlockingQueue<>(config.getLogQueueCapacity());
+        this.dropped = new AtomicLong();
+        this.running = true;
+        this.flusher = new Thread(this::runFlusher, "chat-log-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    public static MessageLog open(ServerConfig config, EventLog eventLog) throws IOException {
+        Path directory = Paths.get(config.getLogDirectory());
+        Files.createDirectories(directory);
+        MessageLog log = new MessageLog(directory, config, eventLog);
+
+        try (Stream<Path> dirs = Files.list(directory)) {
+            for (Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                String roomName = decodeRoomName(dir.getFileName().toString());
+                if (roomName != null) {
+                    log.rooms.put(roomName, RoomLog.open(dir, config));
+                }
+            }
+        }
+
+        log.flusher.start();
+        return log;
+    }
+
+    public Set<String> getRoomNames() {
+        return rooms.keySet();
+    }
+
+    // Не блокирует цикл событий: при переполнении очереди кадр не попадёт в журнал.
+    // Пока кадр в очереди, журнал держит на него свою ссылку
+    public boolean append(String roomName, PooledBuffer frame) {
+        if (queue.offer(new Entry(roomName, frame.retain(), System.currentTimeMillis()))) {
+            return true;
+        }
+        frame.release();
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    public ByteBuffer[] readLast(String roomName, int count) {
+        RoomLog log = rooms.get(roomName);
+        if (log == null || count <= 0) {
+            return new ByteBuffer[0];
+        }
+        try {
+            return log.readLast(count);
+        } catch (IOException e) {
+            eventLog.log(EventType.MESSAGE_LOG_ERROR, "чтение - " + e.getMessage());
+            return new ByteBuffer[0];
+        }
+    }
+
+    // Чтение сегментов (открытие файлов и отображение запечатанных) - дисковый ввод-вывод,
+    // поэтому из цикла событий оно уходит в отдельный виртуальный поток; done вызывается в нём
+    public void readLastAsync(String roomName, int count, Consumer<ByteBuffer[]> done) {
+        Thread.ofVirtual().name("chat-log-read").start(() -> done.accept(readLast(roomName, count)));
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    private void runFlusher() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(config.getFsyncIntervalMillis(), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                maybeForce(first != null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            } catch (IOException e) {
+                eventLog.log(EventType.MESSAGE_LOG_ERROR, "запись - " + e.getMessage());
+                batch.clear();
+            }
+        }
+    }
+
+    private void writeBatch(List<Entry> batch) throws IOException {
+        try {
+            for (Entry entry : batch) {
+                RoomLog log = rooms.get(entry.roomName);
+                if (log == null) {
+                    log = RoomLog.create(directory.resolve(encodeRoomName(entry.roomName)), config);
+                    rooms.put(entry.roomName, log);
+                }
+                log.append(entry.frame.buffer().duplicate(), entry.timestamp);
+            }
+        } finally {
+            for (Entry entry : batch) {
+                entry.frame.release();
+            }
+        }
+    }
+
+    private void maybeForce(boolean wroteBatch) {
+        long now = System.currentTimeMillis();
+        switch (config.getFsyncPolicy()) {
+            case EVERY_BATCH:
+                if (wroteBatch) {
+                    forceAll();
+                }
+                break;
+            case INTERVAL:
+                if (now - lastForce >= config.getFsyncIntervalMillis()) {
+                    forceAll();
+                    lastForce = now;
+                }
+                break;
+            case NEVER:
+                break;
+        }
+    }
+
+    private void forceAll() {
+        for (RoomLog log : rooms.values()) {
+            log.force();
+        }
+    }
+
+    public void close() {
+        running = false;
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (RoomLog log : rooms.values()) {
+            log.close();
+        }
+    }
+
+    private static String encodeRoomName(String roomName) {
+        return HexFormat.of().formatHex(roomName.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeRoomName(String dirName) {
+        try {
+            return new String(HexFormat.of().parseHex(dirName), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static class Entry {
+        final String roomName;
+        final PooledBuffer frame;
+        final long timestamp;
+
+        Entry(String roomName, PooledBuffer frame, long timestamp) {
+            this.roomName = roomName;
+            this.frame = frame;
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,409 @@
+package org.example;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+// Счётчики сервера: LongAdder и LogHistogram, запись на горячем пути без блокировок
+public class Metrics implements MetricsMXBean {
+    // STATS - одна строка в очереди клиента, поэтому по комнатам в ней только итоги и самые
+    // активные; разбивка по всем комнатам - в JMX (getRoomStats)
+    private static final int STATS_TOP_ROOMS = 10;
+
+    private final Map<String, ChatRoom> rooms;
+    private final BufferPool bufferPool;
+
+    private final LongAdder connectionsOpened = new LongAdder();
+    private final LongAdder connectionsClosed = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder framesOut = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+    private final LongAdder unknownCommands = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder rateDelayed = new LongAdder();
+    private final LongAdder rateDropped = new LongAdder();
+    private final LongAdder rateDisconnected = new LongAdder();
+    private final LongAdder compressedFrames = new LongAdder();
+    private final LongAdder compressInBytes = new LongAdder();
+    private final LongAdder compressOutBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder[] commands;
+
+    private final LogHistogram loopNanos = new LogHistogram();
+    private final LogHistogram keysPerWakeup = new LogHistogram();
+    private final LogHistogram outboundQueueBytes = new LogHistogram();
+    private final LogHistogram fanOut = new LogHistogram();
+    private final LogHistogram broadcastNanos = new LogHistogram();
+
+    public Metrics(Map<String, ChatRoom> rooms, BufferPool bufferPool) {
+        this.rooms = rooms;
+        this.bufferPool = bufferPool;
+        this.commands = new LongAdder[Command.values().length];
+        for (int i = 0; i < commands.length; i++) {
+            commands[i] = new LongAdder();
+        }
+    }
+
+    public void connectionOpened() {
+        connectionsOpened.increment();
+    }
+
+    public void connectionClosed() {
+        connectionsClosed.increment();
+    }
+
+    // Отклонён при accept по лимиту подключений
+    public void connectionRejected() {
+        rejected.increment();
+    }
+
+    // Отключён по таймауту простоя или рукопожатия
+    public void connectionTimedOut() {
+        timedOut.increment();
+    }
+
+    public void rateLimitDelayed() {
+        rateDelayed.increment();
+    }
+
+    public void rateLimitDropped() {
+        rateDropped.increment();
+    }
+
+    public void rateLimitDisconnected() {
+        rateDisconnected.increment();
+    }
+
+    public void addBytesIn(long bytes) {
+        bytesIn.add(bytes);
+    }
+
+    public void addBytesOut(long bytes) {
+        bytesOut.add(bytes);
+    }
+
+    public void frameOut() {
+        framesOut.increment();
+    }
+
+    public void frameDropped() {
+        framesDropped.increment();
+    }
+
+    public void command(Command command) {
+        if (command == null) {
+            unknownCommands.increment();
+        } else {
+            commands[command.ordinal()].increment();
+        }
+    }
+
+    // Время обработки готовых ключей за один проход цикла, без ожидания в select
+    public void loopPass(int keys, long nanos) {
+        keysPerWakeup.record(keys);
+        loopNanos.record(nanos);
+    }
+
+    public void outboundQueue(int pendingBytes) {
+        outboundQueueBytes.record(pendingBytes);
+    }
+
+    public void broadcast(int members, long nanos) {
+        fanOut.record(members);
+        broadcastNanos.record(nanos);
+    }
+
+    // Сжатый кадр считается один раз, сколько бы участников его ни получили
+    public void frameCompressed(int rawBytes, int compressedBytes, long nanos) {
+        compressedFrames.increment();
+        compressInBytes.add(rawBytes);
+        compressOutBytes.add(compressedBytes);
+        compressNanos.add(nanos);
+    }
+
+    @Override
+    public long getConnections() {
+        return connectionsOpened.sum() - connectionsClosed.sum();
+    }
+
+    @Override
+    public long getRejectedConnections() {
+        return rejected.sum();
+    }
+
+    @Override
+    public long getTimedOutConnections() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getFramesIn() {
+        long total = unknownCommands.sum();
+        for (LongAdder counter : commands) {
+            total += counter.sum();
+        }
+        return total;
+    }
+
+    @Override
+    public long getFramesOut() {
+        return framesOut.sum();
+    }
+
+    @Override
+    public long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    @Override
+    public Map<String, Long> getCommandCounts() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Command command : Command.values()) {
+            result.put(command.name(), commands[command.ordinal()].sum());
+        }
+        result.put("UNKNOWN", unknownCommands.sum());
+        return result;
+    }
+
+    @Override
+    public long getLoopMicrosP50() {
+        return loopNanos.getPercentile(50) / 1000;
+    }
+
+    @Override
+    public long getLoopMicrosP99() {
+        return loopNanos.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getLoopMicrosMax() {
+        return loopNanos.getMax() / 1000;
+    }
+
+    @Override
+    public double getKeysPerWakeup() {
+        return keysPerWakeup.getMean();
+    }
+
+    @Override
+    public long getOutboundQueueBytesP99() {
+        return outboundQueueBytes.getPercentile(99);
+    }
+
+    @Override
+    public double getFanOutMean() {
+        return fanOut.getMean();
+    }
+
+    @Override
+    public long getFanOutMax() {
+        return fanOut.getMax();
+    }
+
+    @Override
+    public long getBroadcastMicrosP99() {
+        return broadcastNanos.getPercentile(99) / 1000;
+    }
+
+    @Override
+    public long getBroadcastMicrosMax() {
+        return broadcastNanos.getMax() / 1000;
+    }
+
+    // имя комнаты -> "members=..;messages=..;deliveries=..;broadcastMicrosMean=.."
+    @Override
+    public Map<String, String> getRoomStats() {
+        Map<String, String> result = new LinkedHashMap<>();
+        for (ChatRoom room : rooms.values()) {
+            result.put(room.getName(), formatRoom(room));
+        }
+        return result;
+    }
+
+    @Override
+    public long getBufferPoolInUse() {
+        return bufferPool.getInUse();
+    }
+
+    @Override
+    public long getBufferPoolHits() {
+        return bufferPool.getHits();
+    }
+
+    @Override
+    public long getBufferPoolMisses() {
+        return bufferPool.getMisses();
+    }
+
+    @Override
+    public long getBufferPoolDirectBytes() {
+        return bufferPool.getDirectBytes();
+    }
+
+    @Override
+    public long getBufferPoolLeaks() {
+        return bufferPool.getLeaks();
+    }
+
+    @Override
+    public long getRateLimitDelayed() {
+        return rateDelayed.sum();
+    }
+
+    @Override
+    public long getRateLimitDropped() {
+        return rateDropped.sum();
+    }
+
+    @Override
+    public long getRateLimitDisconnected() {
+        return rateDisconnected.sum();
+    }
+
+    @Override
+    public long getCompressedFrames() {
+        return compressedFrames.sum();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long out = compressOutBytes.sum();
+        return out == 0 ? 0 : (double) compressInBytes.sum() / out;
+    }
+
+    @Override
+    public long getCompressNanosPerKilobyte() {
+        long in = compressInBytes.sum();
+        return in == 0 ? 0 : compressNanos.sum() * 1024 / in;
+    }
+
+    // Одна строка для ответа STATS: пары ключ=значение через ';'
+    public String format(ClientSession client) {
+        StringBuilder sb = new StringBuilder();
+        append(sb, "connections", getConnections());
+        append(sb, "rejected", getRejectedConnections());
+        append(sb, "timedOut", getTimedOutConnections());
+        append(sb, "bytesIn", getBytesIn());
+        append(sb, "bytesOut", getBytesOut());
+        append(sb, "framesIn", getFramesIn());
+        append(sb, "framesOut", getFramesOut());
+        append(sb, "framesDropped", getFramesDropped());
+        for (Map.Entry<String, Long> entry : getCommandCounts().entrySet()) {
+            append(sb, "cmd." + entry.getKey(), entry.getValue());
+        }
+        append(sb, "loopMicros.p50", getLoopMicrosP50());
+        append(sb, "loopMicros.p99", getLoopMicrosP99());
+        append(sb, "loopMicros.max", getLoopMicrosMax());
+        append(sb, "keysPerWakeup", String.format(Locale.ROOT, "%.2f", getKeysPerWakeup()));
+        append(sb, "outboundQueueBytes.p99", getOutboundQueueBytesP99());
+        append(sb, "fanOut.mean", String.format(Locale.ROOT, "%.1f", getFanOutMean()));
+        append(sb, "fanOut.max", getFanOutMax());
+        append(sb, "broadcastMicros.p99", getBroadcastMicrosP99());
+        append(sb, "broadcastMicros.max", getBroadcastMicrosMax());
+        append(sb, "pool.inUse", getBufferPoolInUse());
+        append(sb, "pool.hits", getBufferPoolHits());
+        append(sb, "pool.misses", getBufferPoolMisses());
+        append(sb, "pool.directBytes", getBufferPoolDirectBytes());
+        append(sb, "pool.leaks", getBufferPoolLeaks());
+        append(sb, "rateLimit.delayed", getRateLimitDelayed());
+        append(sb, "rateLimit.dropped", getRateLimitDropped());
+        append(sb, "rateLimit.disconnected", getRateLimitDisconnected());
+        append(sb, "compress.frames", getCompressedFrames());
+        append(sb, "compress.ratio", String.format(Locale.ROOT, "%.2f", getCompressionRatio()));
+        append(sb, "compress.nanosPerKb", getCompressNanosPerKilobyte());
+        appendRooms(sb);
+        append(sb, "self.bytesIn", client.getBytesIn());
+        append(sb, "self.bytesOut", client.getBytesOut());
+        append(sb, "self.messagesIn", client.getMessagesIn());
+        append(sb, "self.queuedBytes", client.getOutbound().getPendingBytes());
+        append(sb, "self.compressed", client.isCompressed());
+        return sb.toString();
+    }
+
+    private void appendRooms(StringBuilder sb) {
+        PriorityQueue<RoomSample> top = new PriorityQueue<>(STATS_TOP_ROOMS + 1,
+                (a, b) -> Long.compare(a.messages, b.messages));
+        int count = 0;
+        long members = 0;
+        for (ChatRoom room : rooms.values()) {
+            count++;
+            members += room.getMemberCount();
+            long messages = room.getBroadcasts();
+            if (top.size() < STATS_TOP_ROOMS || messages > top.peek().messages) {
+                top.offer(new RoomSample(room, messages));
+                if (top.size() > STATS_TOP_ROOMS) {
+                    top.poll();
+                }
+            }
+        }
+        append(sb, "rooms.count", count);
+        append(sb, "rooms.members", members);
+
+        RoomSample[] busiest = new RoomSample[top.size()];
+        for (int i = busiest.length - 1; i >= 0; i--) {
+            busiest[i] = top.poll();
+        }
+        for (RoomSample sample : busiest) {
+            append(sb, "room." + escape(sample.room.getName()), formatRoom(sample.room).replace(';', ','));
+        }
+    }
+
+    // Имя комнаты в ключе: ';', '=', ',', '%' и управляющие символы как %XX, остальное как есть
+    private static String escape(String name) {
+        StringBuilder sb = null;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == ';' || c == '=' || c == ',' || c == '%' || c < ' ') {
+                if (sb == null) {
+                    sb = new StringBuilder(name.length() + 8).append(name, 0, i);
+                }
+                sb.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? name : sb.toString();
+    }
+
+    private static String formatRoom(ChatRoom room) {
+        long messages = room.getBroadcasts();
+        long micros = messages == 0 ? 0 : room.getBroadcastNanos() / messages / 1000;
+        return "members=" + room.getMemberCount()
+                + ";messages=" + messages
+                + ";deliveries=" + room.getDeliveries()
+                + ";broadcastMicrosMean=" + micros;
+    }
+
+    private static void append(StringBuilder sb, String key, Object value) {
+        if (sb.length() > 0) {
+            sb.append(';');
+        }
+        sb.append(key).append('=').append(value);
+    }
+
+    // Счётчик сообщений снимается один раз: комнаты пишут в него, пока идёт отбор
+    private static class RoomSample {
+        final ChatRoom room;
+        final long messages;
+
+        RoomSample(ChatRoom room, long messages) {
+            this.room = room;
+            this.messages = messages;
+        }
+    }
+}
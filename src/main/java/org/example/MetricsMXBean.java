@@ -0,0 +1,66 @@
+package org.example;
+
+import java.util.Map;
+
+// То же, что отдаёт команда STATS, но для JMX (jconsole, VisualVM)
+public interface MetricsMXBean {
+    long getConnections();
+
+    long getRejectedConnections();
+
+    long getTimedOutConnections();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getFramesIn();
+
+    long getFramesOut();
+
+    long getFramesDropped();
+
+    Map<String, Long> getCommandCounts();
+
+    long getLoopMicrosP50();
+
+    long getLoopMicrosP99();
+
+    long getLoopMicrosMax();
+
+    double getKeysPerWakeup();
+
+    long getOutboundQueueBytesP99();
+
+    double getFanOutMean();
+
+    long getFanOutMax();
+
+    long getBroadcastMicrosP99();
+
+    long getBroadcastMicrosMax();
+
+    Map<String, String> getRoomStats();
+
+    long getBufferPoolInUse();
+
+    long getBufferPoolHits();
+
+    long getBufferPoolMisses();
+
+    long getBufferPoolDirectBytes();
+
+    long getBufferPoolLeaks();
+
+    long getRateLimitDelayed();
+
+    long getRateLimitDropped();
+
+    long getRateLimitDisconnected();
+
+    long getCompressedFrames();
+
+    double getCompressionRatio();
+
+    long getCompressNanosPerKilobyte();
+}
@@ -0,0 +1,145 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+
+public class OutboundQueue {
+    // Сколько кадров отдаём в один gathering write (ограничение IOV_MAX в Linux - 1024)
+    public static final int MAX_GATHER = 64;
+
+    // frames[i] - своя позиция чтения в общем буфере owners[i]
+    private ByteBuffer[] frames;
+    private PooledBuffer[] owners;
+    private int head;
+    private int size;
+    private final int highWatermark;
+    private final int lowWatermark;
+    private int pendingBytes;
+    private boolean overflowed;
+
+    public OutboundQueue(int highWatermark, int lowWatermark) {
+        this.frames = new ByteBuffer[16];
+        this.owners = new PooledBuffer[16];
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+    }
+
+    // Очередь забирает ссылку на frame в любом случае: отброшенный кадр она сразу освобождает.
+    // false - клиент не успевает читать и очередь выше верхней отметки
+    public boolean offer(PooledBuffer frame) {
+        ByteBuffer view = frame.buffer().duplicate();
+        if (overflowed) {
+            frame.release();
+            return false;
+        }
+        if (pendingBytes + view.remaining() > highWatermark) {
+            overflowed = true;
+            frame.release();
+            return false;
+        }
+        if (size == frames.length) {
+            grow();
+        }
+        int tail = (head + size) & (frames.length - 1);
+        frames[tail] = view;
+        owners[tail] = frame;
+        size++;
+        pendingBytes += view.remaining();
+        return true;
+    }
+
+    // Все накопленные кадры уходят одним вызовом write(ByteBuffer[]) на каждые MAX_GATHER кадров.
+    // true - очередь опустела, OP_WRITE больше не нужен
+    public boolean flush(SocketChannel channel, ByteBuffer[] scratch) throws IOException {
+        int mask = frames.length - 1;
+        while (size > 0) {
+            int count = Math.min(size, scratch.length);
+            long requested = 0;
+            for (int i = 0; i < count; i++) {
+                scratch[i] = frames[(head + i) & mask];
+                requested += scratch[i].remaining();
+            }
+
+            long written = channel.write(scratch, 0, count);
+            pendingBytes -= (int) written;
+
+            while (size > 0 && !frames[head].hasRemaining()) {
+                removeHead(mask).release();
+            }
+            Arrays.fill(scratch, 0, count, null);
+
+            if (written < requested) {
+                break;
+            }
+        }
+
+        if (overflowed && pendingBytes <= lowWatermark) {
+            overflowed = false;
+        }
+        return size == 0;
+    }
+
+    // Для блокирующей записи из отдельного потока: кадры забираются из очереди вместе со ссылками
+    // (их освобождает вызывающий), а байты остаются в счёте до release, пока запись не завершится
+    public int drain(ByteBuffer[] dst, PooledBuffer[] dstOwners) {
+        int mask = frames.length - 1;
+        int count = Math.min(size, dst.length);
+        for (int i = 0; i < count; i++) {
+            dst[i] = frames[head];
+            dstOwners[i] = removeHead(mask);
+        }
+        return count;
+    }
+
+    public void release(int bytes) {
+        pendingBytes -= bytes;
+        if (overflowed && pendingBytes <= lowWatermark) {
+            overflowed = false;
+        }
+    }
+
+    // При закрытии соединения: всё, что не ушло, возвращается в пул
+    public void clear() {
+        int mask = frames.length - 1;
+        while (size > 0) {
+            pendingBytes -= frames[head].remaining();
+            removeHead(mask).release();
+        }
+    }
+
+    private PooledBuffer removeHead(int mask) {
+        PooledBuffer owner = owners[head];
+        frames[head] = null;
+        owners[head] = null;
+        head = (head + 1) & mask;
+        size--;
+        return owner;
+    }
+
+    private void grow() {
+        ByteBuffer[] larger = new ByteBuffer[frames.length * 2];
+        PooledBuffer[] largerOwners = new PooledBuffer[owners.length * 2];
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) & (frames.length - 1);
+            larger[i] = frames[index];
+            largerOwners[i] = owners[index];
+        }
+        frames = larger;
+        owners = largerOwners;
+        head = 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isOverflowed() {
+        return overflowed;
+    }
+
+    public int getPendingBytes() {
+        return pendingBytes;
+    }
+}
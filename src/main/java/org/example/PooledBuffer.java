@@ -0,0 +1,72 @@
+package org.example;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Буфер со счётчиком ссылок. Кто получил буфер (acquire, retain или через send),
+// тот обязан один раз вызвать release; последний release возвращает память в пул.
+// Сам буфер не меняют: читатели работают через buffer().duplicate()
+public class PooledBuffer {
+    private final BufferPool pool;
+    private final int sizeClass;
+    private final ByteBuffer buffer;
+    private final AtomicInteger refCount;
+    private final BufferPool.LeakTracker tracker;
+    private final Cleaner.Cleanable cleanable;
+
+    PooledBuffer(BufferPool pool, int sizeClass, ByteBuffer buffer, BufferPool.LeakTracker tracker, Cleaner cleaner) {
+        this.pool = pool;
+        this.sizeClass = sizeClass;
+        this.buffer = buffer;
+        this.refCount = new AtomicInteger(1);
+        this.tracker = tracker;
+        this.cleanable = tracker == null ? null : cleaner.register(this, tracker);
+    }
+
+    // Для памяти не из пула (например, срезы отображённых сегментов журнала): release ничего не возвращает
+    public static PooledBuffer unpooled(ByteBuffer buffer) {
+        return new PooledBuffer(null, -1, buffer, null, null);
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public PooledBuffer retain() {
+        return retain(1);
+    }
+
+    public PooledBuffer retain(int count) {
+        while (true) {
+            int current = refCount.get();
+            if (current <= 0) {
+                throw new IllegalStateException("Буфер уже возвращён в пул");
+            }
+            if (refCount.compareAndSet(current, current + count)) {
+                return this;
+            }
+        }
+    }
+
+    public void release() {
+        int remaining = refCount.decrementAndGet();
+        if (remaining > 0) {
+            return;
+        }
+        if (remaining < 0) {
+            throw new IllegalStateException("Лишний release буфера");
+        }
+        if (tracker != null) {
+            tracker.released = true;
+            cleanable.clean();
+        }
+        if (pool != null) {
+            pool.recycle(buffer, sizeClass);
+        }
+    }
+
+    public int refCount() {
+        return refCount.get();
+    }
+}
@@ -0,0 +1,39 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+// Выбирает текстовый или двоичный протокол по первому байту от клиента
+public class ProtocolDecoder implements FrameDecoder {
+    private final int maxFrameSize;
+    private final BufferPool pool;
+    private FrameDecoder delegate;
+
+    public ProtocolDecoder(int maxFrameSize, BufferPool pool) {
+        this.maxFrameSize = maxFrameSize;
+        this.pool = pool;
+    }
+
+    @Override
+    public void decode(ByteBuffer in, MessageHandler handler) throws IOException {
+        if (delegate == null) {
+            if (!in.hasRemaining()) {
+                return;
+            }
+            if (in.get(in.position()) == BinaryDecoder.MAGIC) {
+                in.get();
+                delegate = new BinaryDecoder(maxFrameSize, pool);
+            } else {
+                delegate = new LineDecoder(maxFrameSize, pool);
+            }
+        }
+        delegate.decode(in, handler);
+    }
+
+    @Override
+    public void release() {
+        if (delegate != null) {
+            delegate.release();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package org.example;
+
+public enum RateLimitPolicy {
+    DELAY,       // пропустить сообщение в долг и не читать соединение, пока долг не погасится
+    DROP,        // отбросить сообщение, клиент получает одно предупреждение
+    DISCONNECT   // отключить клиента
+}
@@ -0,0 +1,113 @@
+package org.example;
+
+// Лимиты на команды, которые что-то рассылают (MSG, JOIN, CREATE). Проверка идёт до того,
+// как собран кадр рассылки, так что флуд одного клиента не превращается в N записей на цикле.
+// Ведро соединения живёт в сессии, ведро комнаты - в комнате
+public class RateLimiter implements RateLimiterMXBean {
+    private final Metrics metrics;
+    private final EventLog eventLog;
+    private volatile double clientRate;
+    private volatile int clientBurst;
+    private volatile double roomRate;
+    private volatile int roomBurst;
+    private volatile RateLimitPolicy policy;
+
+    public RateLimiter(ServerConfig config, Metrics metrics, EventLog eventLog) {
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.clientRate = config.getClientMessagesPerSecond();
+        this.clientBurst = config.getClientBurst();
+        this.roomRate = config.getRoomMessagesPerSecond();
+        this.roomBurst = config.getRoomBurst();
+        this.policy = config.getRateLimitPolicy();
+    }
+
+    // false - команду выполнять не надо; при DELAY пауза чтения записывается в сессию
+    public boolean admit(ClientSession client, ChatRoom room) {
+        long now = System.nanoTime();
+        RateLimitPolicy current = policy;
+        boolean borrow = current == RateLimitPolicy.DELAY;
+
+        long wait = client.getRateBucket().acquire(clientRate, clientBurst, now, borrow);
+        if (wait != TokenBucket.REJECTED && room != null) {
+            long roomWait = room.getRateBucket().acquire(roomRate, roomBurst, now, borrow);
+            if (roomWait == TokenBucket.REJECTED) {
+                // Сообщение, которое не пропустила комната, не должно расходовать лимит отправителя
+                client.getRateBucket().refund();
+                wait = roomWait;
+            } else {
+                wait = Math.max(wait, roomWait);
+            }
+        }
+
+        if (wait == 0) {
+            client.setRateWarned(false);
+            return true;
+        }
+        if (wait > 0) {
+            metrics.rateLimitDelayed();
+            client.setReadPauseNanos(wait);
+            return true;
+        }
+
+        if (current == RateLimitPolicy.DISCONNECT) {
+            metrics.rateLimitDisconnected();
+            eventLog.log(EventType.RATE_LIMITED, client.getUsername());
+            client.getOwner().close(client);
+        } else {
+            // Долг при DELAY тоже ограничен: сверх него сообщение отбрасывается
+            metrics.rateLimitDropped();
+        }
+        return false;
+    }
+
+    @Override
+    public double getClientMessagesPerSecond() {
+        return clientRate;
+    }
+
+    @Override
+    public void setClientMessagesPerSecond(double rate) {
+        this.clientRate = rate;
+    }
+
+    @Override
+    public int getClientBurst() {
+        return clientBurst;
+    }
+
+    @Override
+    public void setClientBurst(int burst) {
+        this.clientBurst = burst;
+    }
+
+    @Override
+    public double getRoomMessagesPerSecond() {
+        return roomRate;
+    }
+
+    @Override
+    public void setRoomMessagesPerSecond(double rate) {
+        this.roomRate = rate;
+    }
+
+    @Override
+    public int getRoomBurst() {
+        return roomBurst;
+    }
+
+    @Override
+    public void setRoomBurst(int burst) {
+        this.roomBurst = burst;
+    }
+
+    @Override
+    public String getPolicy() {
+        return policy.name();
+    }
+
+    @Override
+    public void setPolicy(String policy) {
+        this.policy = RateLimitPolicy.valueOf(policy.toUpperCase());
+    }
+}
@@ -0,0 +1,24 @@
+package org.example;
+
+// Лимиты можно менять на ходу из jconsole; 0 - без ограничения
+public interface RateLimiterMXBean {
+    double getClientMessagesPerSecond();
+
+    void setClientMessagesPerSecond(double rate);
+
+    int getClientBurst();
+
+    void setClientBurst(int burst);
+
+    double getRoomMessagesPerSecond();
+
+    void setRoomMessagesPerSecond(double rate);
+
+    int getRoomBurst();
+
+    void setRoomBurst(int burst);
+
+    String getPolicy();
+
+    void setPolicy(String policy);
+}
@@ -0,0 +1,280 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Каталог комнат для LIST: упорядочен по имени, чтобы префикс и страница не требовали обхода всех
+// комнат. Все комнаты лежат одним отсортированным массивом, новые до пересборки ждут в небольшой
+// карте и вливаются в массив слиянием; комнаты из снимка приходят уже по порядку и вливаются разом,
+// без вставки по одной. Ни один ответ не длиннее roomListMaxPage комнат: LIST без параметров - первая страница,
+// а у обрезанной страницы последним элементом идёт MORE:смещение, с которого клиент продолжает
+// через LIST:префикс:смещение:количество. Первая страница кодируется один раз
+// и отдаётся всем, пока не изменятся комнаты или их участники; сами изменения только увеличивают
+// версию, пересборка - при следующем LIST.
+// Кадры ответа берутся из пула, как и остальные исходящие: закэшированный кадр держит ссылку
+// каталога, каждый получатель - свою, и память вернётся в пул после пересборки и последней отправки
+public class RoomDirectory {
+    private static final byte[] ROOMS = "ROOMS:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MORE = ";MORE:".getBytes(StandardCharsets.UTF_8);
+
+    // Готовый кадр полного списка; сжатый вариант собирается при первом запросе от клиента со сжатием.
+    // Поля меняются только под замком каталога
+    private static final class Snapshot {
+        final long version;
+        final long builtAtMillis;
+        final PooledBuffer frame;
+        PooledBuffer compressed;
+
+        Snapshot(long version, long builtAtMillis, PooledBuffer frame) {
+            this.version = version;
+            this.builtAtMillis = builtAtMillis;
+            this.frame = frame;
+        }
+
+        void release() {
+            frame.release();
+            if (compressed != null) {
+                compressed.release();
+            }
+        }
+    }
+
+    // Комнаты по порядку имён одним массивом: страница находит начало префикса двоичным поиском
+    // и сразу встаёт на смещение, не перебирая комнаты до него. Пересобирается после создания
+    // комнат; смена числа участников его не меняет. version - сколько комнат создано к сборке
+    private static final class Index {
+        final long version;
+        final long builtAtMillis;
+        final ChatRoom[] rooms;
+
+        Index(long version, long builtAtMillis, ChatRoom[] rooms) {
+            this.version = version;
+            this.builtAtMillis = builtAtMillis;
+            this.rooms = rooms;
+        }
+    }
+
+    private static final Comparator<ChatRoom> BY_NAME = Comparator.comparing(ChatRoom::getName);
+
+    // Созданные после последней пересборки индекса
+    private final ConcurrentSkipListMap<String, ChatRoom> pending;
+    private final BufferPool bufferPool;
+    private final AtomicLong version;
+    private final AtomicLong added;
+    private final long rebuildIntervalMillis;
+    private final int maxPageSize;
+    private Snapshot snapshot;
+    private volatile Index index;
+
+    public RoomDirectory(ServerConfig config, BufferPool bufferPool) {
+        this.pending = new ConcurrentSkipListMap<>();
+        this.index = new Index(0, 0, new ChatRoom[0]);
+        this.bufferPool = bufferPool;
+        this.version = new AtomicLong();
+        this.added = new AtomicLong();
+        this.rebuildIntervalMillis = config.getRoomListRebuildMillis();
+        this.maxPageSize = config.getRoomListMaxPage();
+    }
+
+    // Имена уникальны: за этим следит ClientManager
+    public void add(ChatRoom room) {
+        if (pending.putIfAbsent(room.getName(), room) == null) {
+            added.incrementAndGet();
+            changed();
+        }
+    }
+
+    // Загрузка снимка: комнаты записаны по порядку имён, так что хватает одного слияния с индексом
+    public synchronized void addAll(List<ChatRoom> restored) {
+        ChatRoom[] batch = restored.toArray(new ChatRoom[0]);
+        if (!isSorted(batch)) {
+            Arrays.sort(batch, BY_NAME);
+        }
+        Index current = rebuild();
+        index = new Index(current.version, System.currentTimeMillis(), merge(current.rooms, batch));
+        changed();
+    }
+
+    // Создание комнаты или смена числа участников где угодно в кластере
+    public void changed() {
+        version.incrementAndGet();
+    }
+
+    // Все комнаты по порядку имён, включая только что созданные; массив индекса без копирования
+    public synchronized Collection<ChatRoom> getRooms() {
+        return Arrays.asList(rebuild().rooms);
+    }
+
+    public int size() {
+        return index.rooms.length + pending.size();
+    }
+
+    // Кадр первой страницы со ссылкой для вызывающего (compressor null - без сжатия).
+    // Пока версия не изменилась, отдаётся тот же кадр; с rebuildIntervalMillis > 0
+    // устаревший кадр ещё живёт это время, чтобы частые LIST не пересобирали его на каждом входе.
+    // Замок нужен, чтобы ссылка бралась раньше, чем пересборка отпустит прежний кадр
+    public synchronized PooledBuffer listFrame(FrameCompressor compressor) {
+        long current = version.get();
+        long now = System.currentTimeMillis();
+        Snapshot cached = snapshot;
+        if (cached == null || (cached.version != current && now - cached.builtAtMillis >= rebuildIntervalMillis)) {
+            if (cached != null) {
+                cached.release();
+            }
+            cached = new Snapshot(current, now, toPooled(encode(index().rooms, "", 0, maxPageSize)));
+            snapshot = cached;
+        }
+        if (compressor == null) {
+            return cached.frame.retain();
+        }
+        if (cached.compressed == null) {
+            cached.compressed = compressor.compress(cached.frame);
+        }
+        return cached.compressed.retain();
+    }
+
+    // Комнаты с именем на prefix, начиная с offset-й, не больше limit (и не больше maxPageSize)
+    public PooledBuffer page(String prefix, int offset, int limit) {
+        int size = limit <= 0 ? maxPageSize : Math.min(limit, maxPageSize);
+        return toPooled(encode(index().rooms, prefix, Math.max(offset, 0), size));
+    }
+
+    // Как и первая страница, с rebuildIntervalMillis > 0 устаревший индекс ещё живёт это время
+    private Index index() {
+        Index cached = index;
+        if (cached.version == added.get()
+                || System.currentTimeMillis() - cached.builtAtMillis < rebuildIntervalMillis) {
+            return cached;
+        }
+        synchronized (this) {
+            return rebuild();
+        }
+    }
+
+    // Под замком каталога. add кладёт комнату раньше, чем увеличивает счётчик, поэтому всё,
+    // что учтено в version, уже видно в pending; созданное позже останется до следующей пересборки
+    private Index rebuild() {
+        Index cached = index;
+        long current = added.get();
+        if (cached.version == current) {
+            return cached;
+        }
+        ChatRoom[] fresh = pending.values().toArray(new ChatRoom[0]);
+        cached = new Index(current, System.currentTimeMillis(), merge(cached.rooms, fresh));
+        index = cached;
+        for (ChatRoom room : fresh) {
+            pending.remove(room.getName(), room);
+        }
+        return cached;
+    }
+
+    private static ChatRoom[] merge(ChatRoom[] left, ChatRoom[] right) {
+        if (right.length == 0) {
+            return left;
+        }
+        ChatRoom[] out = new ChatRoom[left.length + right.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < left.length && j < right.length) {
+            out[k++] = BY_NAME.compare(left[i], right[j]) <= 0 ? left[i++] : right[j++];
+        }
+        System.arraycopy(left, i, out, k, left.length - i);
+        System.arraycopy(right, j, out, k + left.length - i, right.length - j);
+        return out;
+    }
+
+    private static boolean isSorted(ChatRoom[] rooms) {
+        for (int i = 1; i < rooms.length; i++) {
+            if (BY_NAME.compare(rooms[i - 1], rooms[i]) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private PooledBuffer toPooled(ByteBuffer encoded) {
+        PooledBuffer pooled = bufferPool.acquire(encoded.remaining());
+        pooled.buffer().put(encoded).flip();
+        return pooled;
+    }
+
+    // ROOMS:имя [N];имя [N]\n - без промежуточных строк. Если подходящие комнаты не поместились,
+    // в конце ;MORE:смещение следующей: каждая комната заканчивается на ], так что с ней не спутать
+    private static ByteBuffer encode(ChatRoom[] sorted, String prefix, int offset, int limit) {
+        byte[] out = new byte[256];
+        int length = put(out, 0, ROOMS);
+        int written = 0;
+        long start = (long) lowerBound(sorted, prefix) + offset;
+        for (int i = (int) Math.min(start, sorted.length); i < sorted.length && written < limit; i++) {
+            ChatRoom room = sorted[i];
+            if (!room.getName().startsWith(prefix)) {
+                break;
+            }
+            byte[] name = room.getNameBytes();
+            if (out.length < length + name.length + 16) {
+                out = Arrays.copyOf(out, Math.max(out.length * 2, length + name.length + 16));
+            }
+            if (written > 0) {
+                out[length++] = ';';
+            }
+            length = put(out, length, name);
+            out[length++] = ' ';
+            out[length++] = '[';
+            length = putDecimal(out, length, room.getClusterMemberCount());
+            out[length++] = ']';
+            written++;
+        }
+        int next = (int) Math.min(start, sorted.length) + written;
+        if (next < sorted.length && written == limit && sorted[next].getName().startsWith(prefix)) {
+            if (out.length < length + MORE.length + 12) {
+                out = Arrays.copyOf(out, length + MORE.length + 12);
+            }
+            length = put(out, length, MORE);
+            length = putDecimal(out, length, offset + written);
+        }
+        if (length == out.length) {
+            out = Arrays.copyOf(out, length + 1);
+        }
+        out[length++] = '\n';
+        return ByteBuffer.wrap(out, 0, length);
+    }
+
+    // Первая комната с именем не меньше key
+    private static int lowerBound(ChatRoom[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle].getName().compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int put(byte[] out, int position, byte[] data) {
+        System.arraycopy(data, 0, out, position, data.length);
+        return position + data.length;
+    }
+
+    private static int putDecimal(byte[] out, int position, int value) {
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+}
@@ -0,0 +1,86 @@
+package org.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Последние сообщения комнаты в уже закодированном виде: повтор при JOIN ничего не сериализует заново
+public class RoomHistory {
+    private static final PooledBuffer[] EMPTY = new PooledBuffer[0];
+
+    // Каждый кадр истории держит свою ссылку на буфер и отпускает её при вытеснении.
+    // Массив заводится при первом сообщении: после восстановления снимка большинство комнат пустые
+    private final int capacity;
+    private PooledBuffer[] frames;
+    private final int maxBytes;
+    private final AtomicLong totalBytes;
+    private final long maxTotalBytes;
+    private int head;
+    private int size;
+    private int bytes;
+    private volatile long lastActivity;
+
+    public RoomHistory(int capacity, int maxBytes, AtomicLong totalBytes, long maxTotalBytes) {
+        this.capacity = capacity;
+        this.frames = EMPTY;
+        this.maxBytes = maxBytes;
+        this.totalBytes = totalBytes;
+        this.maxTotalBytes = maxTotalBytes;
+        this.lastActivity = System.currentTimeMillis();
+    }
+
+    public synchronized void append(PooledBuffer frame) {
+        lastActivity = System.currentTimeMillis();
+        int length = frame.buffer().remaining();
+        if (capacity == 0 || length > maxBytes) {
+            return;
+        }
+        if (frames.length == 0) {
+            frames = new PooledBuffer[capacity];
+        }
+
+        while (size > 0 && (size == frames.length || bytes + length > maxBytes
+                || totalBytes.get() + length > maxTotalBytes)) {
+            evictOldest();
+        }
+        if (totalBytes.get() + length > maxTotalBytes) {
+            return;
+        }
+
+        frames[(head + size) % frames.length] = frame.retain();
+        size++;
+        bytes += length;
+        totalBytes.addAndGet(length);
+    }
+
+    // Каждый кадр снимка - новая ссылка, её забирает send (или надо вызвать release)
+    public synchronized PooledBuffer[] snapshot() {
+        if (size == 0) {
+            return EMPTY;
+        }
+        PooledBuffer[] result = new PooledBuffer[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = frames[(head + i) % frames.length].retain();
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        while (size > 0) {
+            evictOldest();
+        }
+    }
+
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    private void evictOldest() {
+        PooledBuffer oldest = frames[head];
+        frames[head] = null;
+        head = (head + 1) % frames.length;
+        size--;
+        int length = oldest.buffer().remaining();
+        bytes -= length;
+        totalBytes.addAndGet(-length);
+        oldest.release();
+    }
+}
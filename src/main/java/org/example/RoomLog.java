@@ -0,0 +1,112 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+// Журнал одной комнаты: цепочка сегментов, пишет только фоновый поток MessageLog.
+// Отображён только последний сегмент, остальные закрыты; старше logRetentionSegments удаляются
+public class RoomLog {
+    private final Path directory;
+    private final ServerConfig config;
+    private final List<LogSegment> segments;
+
+    private RoomLog(Path directory, ServerConfig config, List<LogSegment> segments) {
+        this.directory = directory;
+        this.config = config;
+        this.segments = new CopyOnWriteArrayList<>(segments);
+    }
+
+    public static RoomLog create(Path directory, ServerConfig config) throws IOException {
+        Files.createDirectories(directory);
+        List<LogSegment> segments = new ArrayList<>();
+        segments.add(LogSegment.create(directory, 0, config.getLogSegmentBytes(), config.getLogIndexIntervalBytes()));
+        return new RoomLog(directory, config, segments);
+    }
+
+    public static RoomLog open(Path directory, ServerConfig config) throws IOException {
+        List<Long> offsets = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                    .filter(name -> name.endsWith(".log"))
+                    .forEach(name -> offsets.add(Long.parseLong(name.substring(0, name.length() - 4))));
+        }
+        offsets.sort(null);
+
+        if (offsets.isEmpty()) {
+            return create(directory, config);
+        }
+        List<LogSegment> segments = new ArrayList<>();
+        int last = offsets.size() - 1;
+        for (int i = 0; i < last; i++) {
+            segments.add(LogSegment.sealed(directory, offsets.get(i), offsets.get(i + 1), config.getLogIndexIntervalBytes()));
+        }
+        segments.add(LogSegment.open(directory, offsets.get(last), config.getLogSegmentBytes(), config.getLogIndexIntervalBytes()));
+
+        RoomLog log = new RoomLog(directory, config, segments);
+        log.applyRetention();
+        return log;
+    }
+
+    public void append(ByteBuffer frame, long timestamp) throws IOException {
+        LogSegment active = segments.get(segments.size() - 1);
+        boolean expired = !active.isEmpty()
+                && timestamp - active.getCreatedAt() > config.getLogSegmentMaxAgeMillis();
+
+        if (!active.hasRoomFor(frame.remaining()) || expired) {
+            if (active.isEmpty()) {
+                return;
+            }
+            LogSegment next = LogSegment.create(directory, active.getNextOffset(),
+                    config.getLogSegmentBytes(), config.getLogIndexIntervalBytes());
+            segments.add(next);
+            active.seal();
+            applyRetention();
+            active = next;
+            if (!active.hasRoomFor(frame.remaining())) {
+                return;
+            }
+        }
+        active.append(frame, timestamp);
+    }
+
+    // Самые старые сегменты сверх предела удаляются целиком; 0 - хранить всё
+    private void applyRetention() throws IOException {
+        int retention = config.getLogRetentionSegments();
+        while (retention > 0 && segments.size() > retention) {
+            segments.remove(0).delete();
+        }
+    }
+
+    public void force() {
+        segments.get(segments.size() - 1).force();
+    }
+
+    // Вызывается из циклов событий одновременно с записью; список берётся копией
+    public ByteBuffer[] readLast(int count) throws IOException {
+        LogSegment[] current = segments.toArray(new LogSegment[0]);
+        ByteBuffer[] result = new ByteBuffer[count];
+        int filled = 0;
+        for (int i = current.length - 1; i >= 0 && filled < count; i--) {
+            filled += current[i].readLast(count - filled, result, count - filled);
+        }
+
+        if (filled == count) {
+            return result;
+        }
+        ByteBuffer[] trimmed = new ByteBuffer[filled];
+        System.arraycopy(result, count - filled, trimmed, 0, filled);
+        return trimmed;
+    }
+
+    public void close() {
+        for (LogSegment segment : segments) {
+            segment.close();
+        }
+    }
+}
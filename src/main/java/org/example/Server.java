@@ -1,68 +1,194 @@
 package org.example;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.*;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.util.LinkedList;
-import java.util.Scanner;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 public class Server {
     private final ServerConfig config;
     private final ClientManager clientManager;
+    private final CommandProcessor processor;
     private ServerSocketChannel serverChannel;
-    private boolean running;
+    private volatile boolean running;
     private Selector selector;
+    private MessageLog messageLog;
+    private ClusterLink cluster;
+    private StateSnapshot snapshot;
 
 
     public Server(int port, int maxClient){
-        this.config = new ServerConfig(port,maxClient);
-        this.clientManager = new ClientManager();
+        this(new ServerConfig(port,maxClient));
+    }
+
+    // Для запуска внутри другого процесса (нагрузочный генератор, бенчмарки)
+    public Server(ServerConfig config){
+        this.config = config;
+        this.clientManager = new ClientManager(config);
+        this.processor = new CommandProcessor(clientManager);
         this.running = true;
     }
 
+    // Настройки: chat-server.properties, переменные CHAT_*, аргументы --имя=значение (см. ConfigLoader)
     public static void main(String[] args) {
-        while (true){
-            int port = setPort();
-            try{
-                Server chatServer = new Server(port, 10);
-                chatServer.startServer();
-                break;
-            } catch (BindException e){
-                System.out.println("Порт " + port + " занят, попробуйте ввести другой." );
-            }
-            catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        ServerConfig config;
+        try {
+            config = ConfigLoader.load(args);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Ошибка настроек: " + e.getMessage());
+            System.exit(1);
+            return;
         }
-    }
-
-    private static int setPort() {
-        Scanner scanner = new Scanner(System.in);
-        System.out.print("Введите порт для запуска сервера: ");
-        return Integer.parseInt(scanner.nextLine());
 
+        try {
+            new Server(config).startServer();
+        } catch (BindException e) {
+            System.out.println("Порт " + config.getPort() + " занят: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
-    private void startServer() throws IOException {
+    public void startServer() throws IOException {
         initializeServer();
-        System.out.println("Сервер запущен на порту " + config.getPort());
-        ServerEventHandler eventHandler = new ServerEventHandler(selector, clientManager, config);
+        clientManager.getEventLog().log(EventType.SERVER_STARTED, config.getPort());
+
+        if (config.getExecutionMode() == ExecutionMode.VIRTUAL_THREADS) {
+            clientManager.getEventLog().log(EventType.SERVER_MODE, "виртуальный поток на соединение");
+            new VirtualThreadServer(serverChannel, clientManager, processor, config).acceptClients();
+            return;
+        }
+
+        if (config.getWorkerThreads() > 0) {
+            startWorkers();
+            return;
+        }
+
+        ServerEventHandler eventHandler = new ServerEventHandler(selector, clientManager, processor, config);
 
         while (running) {
             eventHandler.handleEvents();
         }
     }
 
+    private void startWorkers() throws IOException {
+        ServerEventHandler[] workers = new ServerEventHandler[config.getWorkerThreads()];
+        for (int i = 0; i < workers.length; i++) {
+            ServerEventHandler worker = new ServerEventHandler(Selector.open(), clientManager, processor, config);
+            workers[i] = worker;
+
+            Thread thread = new Thread(() -> runLoop(worker), "chat-worker-" + i);
+            thread.start();
+        }
+        clientManager.getEventLog().log(EventType.SERVER_WORKERS, workers.length);
+
+        Acceptor acceptor = new Acceptor(selector, workers, clientManager.getAdmission());
+        while (running) {
+            acceptor.handleEvents();
+        }
+    }
+
+    // Остановка процесса: сначала последний снимок, затем журналы
+    private void shutdown() {
+        if (snapshot != null) {
+            snapshot.stop();
+            snapshot.write();
+        }
+        closeLogs();
+    }
+
+    // Журнал событий закрывается последним, чтобы в него попали ошибки закрытия журнала сообщений
+    private void closeLogs() {
+        if (messageLog != null) {
+            messageLog.close();
+        }
+        clientManager.getEventLog().close();
+    }
+
+    // Порт в имени - чтобы несколько серверов в одном процессе не мешали друг другу
+    private void registerMetrics() {
+        try {
+            ObjectName name = new ObjectName("org.example:type=ChatServer,port=" + config.getPort());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(clientManager.getMetrics(), name);
+            ObjectName limits = new ObjectName("org.example:type=RateLimiter,port=" + config.getPort());
+            ManagementFactory.getPlatformMBeanServer().registerMBean(clientManager.getRateLimiter(), limits);
+        } catch (JMException e) {
+            clientManager.getEventLog().log(EventType.JMX_ERROR, e.getMessage());
+        }
+    }
+
+    public void stop() {
+        running = false;
+        if (snapshot != null) {
+            snapshot.stop();
+        }
+        if (cluster != null) {
+            cluster.close();
+        }
+        try {
+            serverChannel.close();
+        } catch (IOException ignored) {
+        }
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    private void runLoop(ServerEventHandler eventHandler) {
+        try {
+            while (running) {
+                eventHandler.handleEvents();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 
 
     private void initializeServer() throws IOException {
         serverChannel = ServerSocketChannel.open();
         serverChannel.configureBlocking(false);
-        serverChannel.bind(new InetSocketAddress(config.getPort()));
+        // SO_RCVBUF до bind: иначе окно больше 64 КБ не договорится при рукопожатии
+        if (config.getSocketReceiveBuffer() > 0) {
+            serverChannel.setOption(StandardSocketOptions.SO_RCVBUF, config.getSocketReceiveBuffer());
+        }
+        serverChannel.bind(new InetSocketAddress(config.getPort()), config.getAcceptBacklog());
+
+        EventLog eventLog = clientManager.getEventLog();
+        eventLog.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown));
+
+        // Снимок раньше журнала: комнаты из журнала, которых нет в снимке, добавятся поверх
+        if (config.getSnapshotFile() != null) {
+            snapshot = new StateSnapshot(clientManager, config);
+            snapshot.load();
+            snapshot.start();
+        }
 
-        selector = Selector.open();
-        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        if (config.getLogDirectory() != null) {
+            messageLog = MessageLog.open(config, eventLog);
+            clientManager.setMessageLog(messageLog);
+            eventLog.log(EventType.MESSAGE_LOG_OPENED, config.getLogDirectory());
+        }
+
+        if (config.getClusterPort() > 0) {
+            cluster = new ClusterLink(config, clientManager);
+            clientManager.setCluster(cluster);
+            cluster.start();
+        }
+
+        registerMetrics();
+
+        if (config.getExecutionMode() == ExecutionMode.SELECTOR) {
+            selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        }
     }
 }
\ No newline at end of file
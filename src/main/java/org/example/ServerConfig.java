@@ -1,11 +1,66 @@
 package org.example;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
+import java.util.UUID;
+import java.util.zip.Deflater;
 
 public class ServerConfig {
-    private final int port;
-    private final int maxClient;
-    private final int bufferSize = 1024;
+    private int port;
+    private int maxClient;
+    private int maxClientsPerAddress = 0;
+    private int bufferSize = 1024;
+    private int acceptBacklog = 1024;
+    private boolean tcpNoDelay = true;
+    private int socketSendBuffer = 0;
+    private int socketReceiveBuffer = 0;
+    private int mainRoomCapacity = 10;
+    private int maxFrameSize = 8192;
+    private int outboundHighWatermark = 256 * 1024;
+    private int outboundLowWatermark = 64 * 1024;
+    private SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DISCONNECT;
+    private int workerThreads = 0;
+    private int historySize = 50;
+    private int historyMaxBytesPerRoom = 64 * 1024;
+    private long historyMaxBytesTotal = 64L * 1024 * 1024;
+    private long historyIdleMillis = 10 * 60 * 1000;
+    private String logDirectory = null;
+    private int logSegmentBytes = 16 * 1024 * 1024;
+    private long logSegmentMaxAgeMillis = 60 * 60 * 1000;
+    private int logIndexIntervalBytes = 4096;
+    private int logRetentionSegments = 8;
+    private int logQueueCapacity = 65536;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.INTERVAL;
+    private long fsyncIntervalMillis = 1000;
+    private long flushLatencyMicros = 1000;
+    private ExecutionMode executionMode = ExecutionMode.SELECTOR;
+    private int roomCapacity = 5;
+    private LogLevel logLevel = LogLevel.INFO;
+    private int eventLogCapacity = 8192;
+    private int eventSampleLimit = 1000;
+    private long bufferPoolMaxBytes = 64L * 1024 * 1024;
+    private boolean bufferLeakDetection = false;
+    private String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private int clusterPort = 0;
+    private List<String> clusterPeers = new ArrayList<>();
+    private int clusterQueueCapacity = 65536;
+    private boolean compressionEnabled = true;
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private int compressionMinBytes = 64;
+    private long heartbeatIntervalMillis = 30_000;
+    private long idleTimeoutMillis = 90_000;
+    private long handshakeTimeoutMillis = 10_000;
+    private double clientMessagesPerSecond = 20;
+    private int clientBurst = 40;
+    private double roomMessagesPerSecond = 200;
+    private int roomBurst = 400;
+    private RateLimitPolicy rateLimitPolicy = RateLimitPolicy.DROP;
+    private long roomListRebuildMillis = 0;
+    private int roomListMaxPage = 1000;
+    private String snapshotFile = null;
+    private long snapshotIntervalMillis = 60_000;
+    private long sessionResumeMillis = 120_000;
 
     public ServerConfig(int port, int maxClient){
         this.port = port;
@@ -18,11 +73,458 @@ public class ServerConfig {
         return port;
     }
 
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    // Сколько подключений сервер держит одновременно; лишние отклоняются сразу после accept
     public int getMaxClient() {
         return maxClient;
     }
 
+    public void setMaxClient(int maxClient) {
+        this.maxClient = maxClient;
+    }
+
+    // То же для одного IP-адреса; 0 - без ограничения
+    public int getMaxClientsPerAddress() {
+        return maxClientsPerAddress;
+    }
+
+    public void setMaxClientsPerAddress(int maxClientsPerAddress) {
+        this.maxClientsPerAddress = maxClientsPerAddress;
+    }
+
+    // Буфер чтения цикла событий (и потока соединения в режиме виртуальных потоков)
     public int getBufferSize() {
         return bufferSize;
     }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getAcceptBacklog() {
+        return acceptBacklog;
+    }
+
+    public void setAcceptBacklog(int acceptBacklog) {
+        this.acceptBacklog = acceptBacklog;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    // SO_SNDBUF и SO_RCVBUF клиентских сокетов; 0 - оставить как решит ОС
+    public int getSocketSendBuffer() {
+        return socketSendBuffer;
+    }
+
+    public void setSocketSendBuffer(int socketSendBuffer) {
+        this.socketSendBuffer = socketSendBuffer;
+    }
+
+    public int getSocketReceiveBuffer() {
+        return socketReceiveBuffer;
+    }
+
+    public void setSocketReceiveBuffer(int socketReceiveBuffer) {
+        this.socketReceiveBuffer = socketReceiveBuffer;
+    }
+
+    public int getMainRoomCapacity() {
+        return mainRoomCapacity;
+    }
+
+    public void setMainRoomCapacity(int mainRoomCapacity) {
+        this.mainRoomCapacity = mainRoomCapacity;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    public void setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    public int getOutboundHighWatermark() {
+        return outboundHighWatermark;
+    }
+
+    public void setOutboundHighWatermark(int outboundHighWatermark) {
+        this.outboundHighWatermark = outboundHighWatermark;
+    }
+
+    public int getOutboundLowWatermark() {
+        return outboundLowWatermark;
+    }
+
+    public void setOutboundLowWatermark(int outboundLowWatermark) {
+        this.outboundLowWatermark = outboundLowWatermark;
+    }
+
+    public SlowConsumerPolicy getSlowConsumerPolicy() {
+        return slowConsumerPolicy;
+    }
+
+    public void setSlowConsumerPolicy(SlowConsumerPolicy slowConsumerPolicy) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+    }
+
+    // 0 - один цикл на всё, как раньше; больше 0 - отдельный приёмник и столько рабочих циклов
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public void setWorkerThreads(int workerThreads) {
+        this.workerThreads = workerThreads;
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    public void setHistorySize(int historySize) {
+        this.historySize = historySize;
+    }
+
+    public int getHistoryMaxBytesPerRoom() {
+        return historyMaxBytesPerRoom;
+    }
+
+    public void setHistoryMaxBytesPerRoom(int historyMaxBytesPerRoom) {
+        this.historyMaxBytesPerRoom = historyMaxBytesPerRoom;
+    }
+
+    public long getHistoryMaxBytesTotal() {
+        return historyMaxBytesTotal;
+    }
+
+    public void setHistoryMaxBytesTotal(long historyMaxBytesTotal) {
+        this.historyMaxBytesTotal = historyMaxBytesTotal;
+    }
+
+    // История комнаты без новых сообщений дольше этого срока освобождается
+    public long getHistoryIdleMillis() {
+        return historyIdleMillis;
+    }
+
+    public void setHistoryIdleMillis(long historyIdleMillis) {
+        this.historyIdleMillis = historyIdleMillis;
+    }
+
+    // null - журнал сообщений на диске выключен
+    public String getLogDirectory() {
+        return logDirectory;
+    }
+
+    public void setLogDirectory(String logDirectory) {
+        this.logDirectory = logDirectory;
+    }
+
+    public int getLogSegmentBytes() {
+        return logSegmentBytes;
+    }
+
+    public void setLogSegmentBytes(int logSegmentBytes) {
+        this.logSegmentBytes = logSegmentBytes;
+    }
+
+    public long getLogSegmentMaxAgeMillis() {
+        return logSegmentMaxAgeMillis;
+    }
+
+    public void setLogSegmentMaxAgeMillis(long logSegmentMaxAgeMillis) {
+        this.logSegmentMaxAgeMillis = logSegmentMaxAgeMillis;
+    }
+
+    public int getLogIndexIntervalBytes() {
+        return logIndexIntervalBytes;
+    }
+
+    public void setLogIndexIntervalBytes(int logIndexIntervalBytes) {
+        this.logIndexIntervalBytes = logIndexIntervalBytes;
+    }
+
+    // Сколько сегментов хранить на комнату; 0 - без ограничения
+    public int getLogRetentionSegments() {
+        return logRetentionSegments;
+    }
+
+    public void setLogRetentionSegments(int logRetentionSegments) {
+        this.logRetentionSegments = logRetentionSegments;
+    }
+
+    public int getLogQueueCapacity() {
+        return logQueueCapacity;
+    }
+
+    public void setLogQueueCapacity(int logQueueCapacity) {
+        this.logQueueCapacity = logQueueCapacity;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+
+    public void setFsyncIntervalMillis(long fsyncIntervalMillis) {
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    // Сколько кадр может ждать общей отправки, пока цикл разбирает остальные события
+    public long getFlushLatencyMicros() {
+        return flushLatencyMicros;
+    }
+
+    public void setFlushLatencyMicros(long flushLatencyMicros) {
+        this.flushLatencyMicros = flushLatencyMicros;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    // Вместимость комнат, созданных пользователями
+    public int getRoomCapacity() {
+        return roomCapacity;
+    }
+
+    public void setRoomCapacity(int roomCapacity) {
+        this.roomCapacity = roomCapacity;
+    }
+
+    public LogLevel getLogLevel() {
+        return logLevel;
+    }
+
+    public void setLogLevel(LogLevel logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    // Записей в кольцевом буфере журнала событий (округляется до степени двойки)
+    public int getEventLogCapacity() {
+        return eventLogCapacity;
+    }
+
+    public void setEventLogCapacity(int eventLogCapacity) {
+        this.eventLogCapacity = eventLogCapacity;
+    }
+
+    // Сколько частых событий одного типа печатается в секунду; 0 - все
+    public int getEventSampleLimit() {
+        return eventSampleLimit;
+    }
+
+    public void setEventSampleLimit(int eventSampleLimit) {
+        this.eventSampleLimit = eventSampleLimit;
+    }
+
+    // Сколько свободной direct-памяти пул буферов держит про запас
+    public long getBufferPoolMaxBytes() {
+        return bufferPoolMaxBytes;
+    }
+
+    public void setBufferPoolMaxBytes(long bufferPoolMaxBytes) {
+        this.bufferPoolMaxBytes = bufferPoolMaxBytes;
+    }
+
+    // Отладка: запоминать, где выделен каждый буфер, и сообщать о не возвращённых в пул
+    public boolean isBufferLeakDetection() {
+        return bufferLeakDetection;
+    }
+
+    public void setBufferLeakDetection(boolean bufferLeakDetection) {
+        this.bufferLeakDetection = bufferLeakDetection;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    // Порт для связи между узлами кластера; 0 - сервер работает один
+    public int getClusterPort() {
+        return clusterPort;
+    }
+
+    public void setClusterPort(int clusterPort) {
+        this.clusterPort = clusterPort;
+    }
+
+    // Адреса других узлов в виде host:порт_кластера
+    public List<String> getClusterPeers() {
+        return clusterPeers;
+    }
+
+    public void setClusterPeers(List<String> clusterPeers) {
+        this.clusterPeers = clusterPeers;
+    }
+
+    public int getClusterQueueCapacity() {
+        return clusterQueueCapacity;
+    }
+
+    public void setClusterQueueCapacity(int clusterQueueCapacity) {
+        this.clusterQueueCapacity = clusterQueueCapacity;
+    }
+
+    // Разрешать ли клиентам сжатие (USERNAME:имя;compress=deflate)
+    public boolean isCompressionEnabled() {
+        return compressionEnabled;
+    }
+
+    public void setCompressionEnabled(boolean compressionEnabled) {
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    // Кадры короче этого уходят несжатыми: на коротких строках deflate ничего не выигрывает
+    public int getCompressionMinBytes() {
+        return compressionMinBytes;
+    }
+
+    public void setCompressionMinBytes(int compressionMinBytes) {
+        this.compressionMinBytes = compressionMinBytes;
+    }
+
+    // Сколько клиент может молчать, прежде чем сервер пришлёт ему PING
+    public long getHeartbeatIntervalMillis() {
+        return heartbeatIntervalMillis;
+    }
+
+    public void setHeartbeatIntervalMillis(long heartbeatIntervalMillis) {
+        this.heartbeatIntervalMillis = heartbeatIntervalMillis;
+    }
+
+    // Сколько клиент может молчать всего, включая ожидание ответа на PING
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setIdleTimeoutMillis(long idleTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    // За сколько после подключения клиент должен прислать USERNAME
+    public long getHandshakeTimeoutMillis() {
+        return handshakeTimeoutMillis;
+    }
+
+    public void setHandshakeTimeoutMillis(long handshakeTimeoutMillis) {
+        this.handshakeTimeoutMillis = handshakeTimeoutMillis;
+    }
+
+    // Начальные лимиты RateLimiter; 0 - без ограничения. На ходу меняются через JMX
+    public double getClientMessagesPerSecond() {
+        return clientMessagesPerSecond;
+    }
+
+    public void setClientMessagesPerSecond(double clientMessagesPerSecond) {
+        this.clientMessagesPerSecond = clientMessagesPerSecond;
+    }
+
+    public int getClientBurst() {
+        return clientBurst;
+    }
+
+    public void setClientBurst(int clientBurst) {
+        this.clientBurst = clientBurst;
+    }
+
+    public double getRoomMessagesPerSecond() {
+        return roomMessagesPerSecond;
+    }
+
+    public void setRoomMessagesPerSecond(double roomMessagesPerSecond) {
+        this.roomMessagesPerSecond = roomMessagesPerSecond;
+    }
+
+    public int getRoomBurst() {
+        return roomBurst;
+    }
+
+    public void setRoomBurst(int roomBurst) {
+        this.roomBurst = roomBurst;
+    }
+
+    public RateLimitPolicy getRateLimitPolicy() {
+        return rateLimitPolicy;
+    }
+
+    public void setRateLimitPolicy(RateLimitPolicy rateLimitPolicy) {
+        this.rateLimitPolicy = rateLimitPolicy;
+    }
+
+    // Сколько полный ответ LIST может отставать от изменений; 0 - пересобирать при каждом изменении
+    public long getRoomListRebuildMillis() {
+        return roomListRebuildMillis;
+    }
+
+    public void setRoomListRebuildMillis(long roomListRebuildMillis) {
+        this.roomListRebuildMillis = roomListRebuildMillis;
+    }
+
+    // Наибольшая страница LIST:префикс:смещение:количество
+    public int getRoomListMaxPage() {
+        return roomListMaxPage;
+    }
+
+    public void setRoomListMaxPage(int roomListMaxPage) {
+        this.roomListMaxPage = roomListMaxPage;
+    }
+
+    // Файл снимка комнат, истории и сессий; null - снимки не пишутся и не читаются
+    public String getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    public void setSnapshotFile(String snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    // Как часто писать снимок в фоне; 0 - только при остановке сервера
+    public long getSnapshotIntervalMillis() {
+        return snapshotIntervalMillis;
+    }
+
+    public void setSnapshotIntervalMillis(long snapshotIntervalMillis) {
+        this.snapshotIntervalMillis = snapshotIntervalMillis;
+    }
+
+    // Сколько после отключения имя остаётся за владельцем токена и можно вернуться через RESUME
+    public long getSessionResumeMillis() {
+        return sessionResumeMillis;
+    }
+
+    public void setSessionResumeMillis(long sessionResumeMillis) {
+        this.sessionResumeMillis = sessionResumeMillis;
+    }
 }
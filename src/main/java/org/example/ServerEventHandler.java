@@ -6,26 +6,150 @@ import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
-import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ServerEventHandler implements SessionOwner {
+    private static final ThreadLocal<ServerEventHandler> CURRENT = new ThreadLocal<>();
+    // Таймаут select и шаг колеса таймеров
+    public static final long TICK_MILLIS = 100;
+    public static final int WHEEL_SIZE = 512;
 
-public class ServerEventHandler {
     private final Selector selector;
     private final ClientManager clientManager;
+    private final CommandProcessor processor;
     private final ServerConfig config;
+    private final PooledBuffer readBuffer;
     private final ByteBuffer buffer;
-
-    public ServerEventHandler(Selector selector, ClientManager clientManager, ServerConfig config) {
+    private final MessageHandler dispatcher;
+    private ClientSession readingClient;
+    private final Queue<ClientSession> pendingWrites;
+    private final Queue<ClientSession> slowConsumers;
+    private final ByteBuffer[] gather;
+    private long firstPendingNanos;
+    private final Queue<Runnable> tasks;
+    private final AtomicBoolean wakeupPending;
+    private final AtomicInteger connectionCount;
+    private final TimerWheel timers;
+    private final HeartbeatMonitor heartbeat;
+
+    public ServerEventHandler(Selector selector, ClientManager clientManager, CommandProcessor processor, ServerConfig config) {
         this.selector = selector;
         this.clientManager = clientManager;
+        this.processor = processor;
         this.config = config;
-        this.buffer = ByteBuffer.allocate(config.getBufferSize());
+        this.readBuffer = clientManager.getBufferPool().acquire(config.getBufferSize());
+        this.buffer = readBuffer.buffer();
+        this.dispatcher = msg -> processor.handleMessage(readingClient, msg);
+        this.pendingWrites = new ArrayDeque<>();
+        this.slowConsumers = new ArrayDeque<>();
+        this.gather = new ByteBuffer[OutboundQueue.MAX_GATHER];
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.wakeupPending = new AtomicBoolean();
+        this.connectionCount = new AtomicInteger();
+        this.timers = new TimerWheel(TICK_MILLIS, WHEEL_SIZE);
+        this.heartbeat = new HeartbeatMonitor(timers, clientManager, config);
+    }
+
+    @Override
+    public boolean inEventLoop() {
+        return CURRENT.get() == this;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    // Можно вызывать из любого потока: задача выполнится в потоке этого цикла
+    public void execute(Runnable task) {
+        tasks.add(task);
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    public void register(SocketChannel clientChannel) {
+        connectionCount.incrementAndGet();
+        execute(() -> {
+            try {
+                registerClient(clientChannel);
+            } catch (IOException e) {
+                connectionCount.decrementAndGet();
+                clientManager.getAdmission().release(AdmissionControl.addressOf(clientChannel));
+                closeQuietly(clientChannel);
+            }
+        });
+    }
+
+    @Override
+    public void send(ClientSession client, PooledBuffer frame) {
+        if (inEventLoop()) {
+            enqueue(client, frame);
+        } else {
+            execute(() -> enqueue(client, frame));
+        }
+    }
+
+    @Override
+    public void send(List<ClientSession> clients, PooledBuffer frame) {
+        if (inEventLoop()) {
+            for (ClientSession client : clients) {
+                enqueue(client, frame);
+            }
+        } else {
+            execute(() -> send(clients, frame));
+        }
+    }
+
+    @Override
+    public void close(ClientSession client) {
+        if (!inEventLoop()) {
+            execute(() -> close(client));
+            return;
+        }
+        try {
+            disconnectClient(client);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void enqueue(ClientSession client, PooledBuffer frame) {
+        if (client.isClosed()) {
+            frame.release();
+            return;
+        }
+
+        if (client.getOutbound().offer(frame)) {
+            clientManager.getMetrics().frameOut();
+            if (!client.isWriteScheduled()) {
+                if (pendingWrites.isEmpty()) {
+                    firstPendingNanos = System.nanoTime();
+                }
+                client.setWriteScheduled(true);
+                pendingWrites.add(client);
+            }
+        } else {
+            clientManager.getMetrics().frameDropped();
+            if (config.getSlowConsumerPolicy() == SlowConsumerPolicy.DISCONNECT) {
+                slowConsumers.add(client);
+            }
+        }
     }
 
     public void handleEvents() throws IOException {
-        if (selector.select(100) > 0){
+        if (CURRENT.get() == null) {
+            CURRENT.set(this);
+        }
+
+        int ready = selector.select(TICK_MILLIS);
+        long passStart = System.nanoTime();
+        if (ready > 0){
             Set<SelectionKey> keys = selector.selectedKeys();
             Iterator<SelectionKey> iterator = keys.iterator();
 
@@ -33,144 +157,189 @@ public class ServerEventHandler {
                 SelectionKey key = iterator.next();
                 iterator.remove();
 
+                if (!key.isValid()) {
+                    continue;
+                }
                 if (key.isAcceptable()) {
                     acceptClient(key);
-                } else if (key.isReadable()) {
+                    continue;
+                }
+                if (key.isReadable()) {
                     readFromClient(key);
                 }
+                if (key.isValid() && key.isWritable()) {
+                    writeToClient(key);
+                }
+
+                if (!pendingWrites.isEmpty()
+                        && System.nanoTime() - firstPendingNanos > config.getFlushLatencyMicros() * 1000) {
+                    flushPendingWrites();
+                }
             }
         }
-    }
 
-    private void acceptClient(SelectionKey key) throws IOException {
-        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
-        SocketChannel clientChannel = serverChannel.accept();
-
-        clientChannel.configureBlocking(false);
-        clientChannel.register(selector, SelectionKey.OP_READ);
-
-        clientManager.addClient(clientChannel);
-        clientManager.sendToClient(clientChannel, "OK:Подключено к серверу");
+        runTasks();
+        timers.advance(System.currentTimeMillis());
+        flushPendingWrites();
+        clientManager.evictIdle();
 
-        System.out.println("Новый клиент подключился. Всего: " + clientManager.getClientCount());
+        if (ready > 0) {
+            clientManager.getMetrics().loopPass(ready, System.nanoTime() - passStart);
+        }
     }
 
-    private void readFromClient(SelectionKey key) throws IOException {
-        SocketChannel clientChannel = (SocketChannel) key.channel();
-        buffer.clear();
+    private void runTasks() {
+        wakeupPending.set(false);
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
 
-        try {
-            int bytesRead = clientChannel.read(buffer);
-            if (bytesRead == -1) {
-                disconnectClient(clientChannel);
-                return;
+    // Каждый клиент, получивший кадры за этот проход, сбрасывается один раз gathering write;
+    // OP_WRITE включается только для тех, кто не принял всё сразу
+    private void flushPendingWrites() throws IOException {
+        ClientSession client;
+        while ((client = slowConsumers.poll()) != null) {
+            if (!client.isClosed()) {
+                clientManager.getEventLog().log(EventType.SLOW_CONSUMER, client.getUsername());
+                disconnectClient(client);
             }
+        }
 
-            buffer.flip();
-            String line = StandardCharsets.UTF_8.decode(buffer).toString().trim();
+        while ((client = pendingWrites.poll()) != null) {
+            client.setWriteScheduled(false);
 
-            if (line.isEmpty()) {
-                return;
+            SelectionKey key = client.getKey();
+            if (key != null && key.isValid()) {
+                writeToClient(key);
             }
+        }
+    }
 
-            handleMessage(clientChannel, line);
+    private void writeToClient(SelectionKey key) throws IOException {
+        ClientSession client = (ClientSession) key.attachment();
+        OutboundQueue queue = client.getOutbound();
 
+        try {
+            int before = queue.getPendingBytes();
+            boolean drained = queue.flush(client.getChannel(), gather);
+            int written = before - queue.getPendingBytes();
+            client.addBytesOut(written);
+
+            Metrics metrics = clientManager.getMetrics();
+            metrics.outboundQueue(before);
+            metrics.addBytesOut(written);
+
+            int ops = key.interestOps();
+            int wanted = drained ? ops & ~SelectionKey.OP_WRITE : ops | SelectionKey.OP_WRITE;
+            if (wanted != ops) {
+                key.interestOps(wanted);
+            }
         } catch (IOException e) {
-            disconnectClient(clientChannel);
+            disconnectClient(client);
         }
     }
 
-    private void handleMessage(SocketChannel client, String line) throws IOException {
-        Message msg = Message.fromProtocol(line);
-        String cmd = msg.getCommand();
-        String data = msg.getData();
-
-        switch (cmd) {
-            case "USERNAME":
-                handleUsername(client, data);
-                break;
+    private void acceptClient(SelectionKey key) throws IOException {
+        ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+        SocketChannel clientChannel = serverChannel.accept();
+        if (clientChannel == null || !clientManager.getAdmission().admit(clientChannel)) {
+            return;
+        }
 
-            case "CREATE":
-                handleCreateRoom(client, data);
-                break;
+        connectionCount.incrementAndGet();
+        try {
+            registerClient(clientChannel);
+        } catch (IOException e) {
+            connectionCount.decrementAndGet();
+            clientManager.getAdmission().release(AdmissionControl.addressOf(clientChannel));
+            closeQuietly(clientChannel);
+        }
+    }
 
-            case "JOIN":
-                handleJoinRoom(client, data);
-                break;
+    private void registerClient(SocketChannel clientChannel) throws IOException {
+        clientChannel.configureBlocking(false);
 
-            case "LIST":
-                handleListRooms(client);
-                break;
+        ClientSession session = new ClientSession(clientChannel, this,
+                new ProtocolDecoder(config.getMaxFrameSize(), clientManager.getBufferPool()), clientManager.createOutboundQueue());
+        session.setKey(clientChannel.register(selector, SelectionKey.OP_READ, session));
 
-            case "MSG":
-                handleChatMessage(client, data);
-                break;
+        clientManager.addClient(session);
+        clientManager.sendToClient(session, "OK:Подключено к серверу");
+        heartbeat.watch(session);
 
-            default:
-                clientManager.sendToClient(client, "ERROR:Неизвестная команда");
-        }
+        clientManager.getEventLog().log(EventType.CLIENT_CONNECTED, clientManager.getClientCount());
     }
 
-    private void handleUsername(SocketChannel client, String username) throws IOException {
-        clientManager.setUsername(client, username);
-        clientManager.sendToClient(client, "OK:Имя установлено - " + username);
-        System.out.println("Клиент установил имя: " + username);
-    }
-
-    private void handleCreateRoom(SocketChannel client, String roomName) throws IOException {
-        if (clientManager.createRoom(roomName)) {
-            clientManager.sendToClient(client, "OK:Комната создана - " + roomName);
-            System.out.println("Создана комната: " + roomName);
-        } else {
-            clientManager.sendToClient(client, "ERROR:Комната уже существует");
-        }
-    }
+    private void readFromClient(SelectionKey key) throws IOException {
+        ClientSession client = (ClientSession) key.attachment();
+        buffer.clear();
 
-    private void handleJoinRoom(SocketChannel client, String roomName) throws IOException {
-        String username = clientManager.getUsername(client);
+        try {
+            int bytesRead = client.getChannel().read(buffer);
+            if (bytesRead == -1) {
+                disconnectClient(client);
+                return;
+            }
 
-        if (clientManager.joinRoom(client, roomName)) {
-            clientManager.sendToClient(client, "JOINED:" + roomName);
+            client.touch(System.currentTimeMillis());
+            client.addBytesIn(bytesRead);
+            clientManager.getMetrics().addBytesIn(bytesRead);
+            buffer.flip();
+            readingClient = client;
+            client.getDecoder().decode(buffer, dispatcher);
 
-            String notification = "SYSTEM:" + username + " вошёл в комнату";
-            clientManager.sendToRoom(roomName, notification);
+            long pause = client.takeReadPauseNanos();
+            if (pause > 0 && key.isValid()) {
+                pauseReading(client, pause);
+            }
 
-            System.out.println(username + " вошёл в комнату: " + roomName);
-        } else {
-            clientManager.sendToClient(client, "ERROR:Не удалось войти в комнату");
+        } catch (FrameTooLongException | CorruptFrameException e) {
+            clientManager.sendToClient(client, "ERROR:" + e.getMessage());
+            disconnectClient(client);
+        } catch (IOException e) {
+            disconnectClient(client);
         }
     }
 
-    private void handleListRooms(SocketChannel client) throws IOException {
-        List<String> rooms = clientManager.getRoomList();
-        String roomList = String.join(";", rooms);
-        clientManager.sendToClient(client, "ROOMS:" + roomList);
+    // Клиент в долгу по лимиту: не читаем его, пока долг не погасится, дальше ждёт TCP
+    private void pauseReading(ClientSession client, long nanos) {
+        SelectionKey key = client.getKey();
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        timers.schedule(nanos / 1_000_000, () -> {
+            if (key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        });
     }
 
-    private void handleChatMessage(SocketChannel client, String message) throws IOException {
-        String username = clientManager.getUsername(client);
-        String room = clientManager.getCurrentRoom(client);
-
-        if (room == null) {
-            clientManager.sendToClient(client, "ERROR:Вы не в комнате");
+    private void disconnectClient(ClientSession client) throws IOException {
+        if (client.isClosed()) {
             return;
         }
+        processor.notifyLeaving(client);
 
-        clientManager.sendToRoomWithColor(client, room, username, message);
-    }
-
-    private void disconnectClient(SocketChannel client) throws IOException {
-        String username = clientManager.getUsername(client);
-        String room = clientManager.getCurrentRoom(client);
-
-        if (room != null && username != null) {
-            String notification = "SYSTEM:" + username + " покинул комнату";
-            clientManager.sendToRoom(room, notification);
+        SocketChannel channel = client.getChannel();
+        if (channel.isOpen()) {
+            try {
+                client.getOutbound().flush(channel, gather);
+            } catch (IOException ignored) {
+            }
         }
 
-        clientManager.removeClient(client);
-        client.close();
+        if (processor.disconnect(client)) {
+            connectionCount.decrementAndGet();
+        }
+        client.getOutbound().clear();
+        client.getDecoder().release();
+        channel.close();
+    }
 
-        System.out.println("Клиент отключился: " + username + ". Осталось: " + clientManager.getClientCount());
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
     }
 }
@@ -0,0 +1,18 @@
+package org.example;
+
+import java.util.List;
+
+// Кто доставляет исходящие кадры сессии: цикл событий селектора или поток соединения
+public interface SessionOwner {
+    // true - send можно вызвать прямо из текущего потока, без передачи задачи
+    boolean inEventLoop();
+
+    // Забирает одну ссылку на frame
+    void send(ClientSession client, PooledBuffer frame);
+
+    // Забирает clients.size() ссылок на frame
+    void send(List<ClientSession> clients, PooledBuffer frame);
+
+    // Отключить клиента из любого потока, например по таймауту
+    void close(ClientSession client);
+}
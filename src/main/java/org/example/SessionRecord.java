@@ -0,0 +1,65 @@
+package org.example;
+
+// То, что переживает соединение: имя с цветом и последняя комната, по токену из SESSION.
+// Пока сессия подключена или не вышло время возврата, имя за ней закреплено
+public class SessionRecord {
+    private final String token;
+    private final String username;
+    private final String color;
+    private volatile String room;
+    private ClientSession active;
+    private long releasedAtMillis;
+
+    public SessionRecord(String token, String username, String color, String room, long releasedAtMillis) {
+        this.token = token;
+        this.username = username;
+        this.color = color;
+        this.room = room;
+        this.releasedAtMillis = releasedAtMillis;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getColor() {
+        return color;
+    }
+
+    // Комната, в которой клиент был последним; выход из неё при отключении не считается
+    public String getRoom() {
+        return room;
+    }
+
+    public void setRoom(String room) {
+        this.room = room;
+    }
+
+    // Прежнее соединение, если оно ещё не закрыто
+    public synchronized ClientSession attach(ClientSession session) {
+        ClientSession previous = active;
+        active = session;
+        return previous == session ? null : previous;
+    }
+
+    // Отключение соединения, которое уже заменили через RESUME, запись не освобождает
+    public synchronized void detach(ClientSession session, long nowMillis) {
+        if (active == session) {
+            active = null;
+            releasedAtMillis = nowMillis;
+        }
+    }
+
+    // Соединение уже заменено другим через RESUME
+    public synchronized boolean isReplaced(ClientSession session) {
+        return active != null && active != session;
+    }
+
+    public synchronized boolean isExpired(long nowMillis, long resumeMillis) {
+        return active == null && nowMillis - releasedAtMillis >= resumeMillis;
+    }
+}
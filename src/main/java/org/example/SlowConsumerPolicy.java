@@ -0,0 +1,6 @@
+package org.example;
+
+public enum SlowConsumerPolicy {
+    DROP,        // отбрасывать новые сообщения, пока очередь не опустится ниже нижней отметки
+    DISCONNECT   // отключать клиента при превышении верхней отметки
+}
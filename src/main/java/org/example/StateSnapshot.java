@@ -0,0 +1,238 @@
+package org.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Снимок состояния для быстрого перезапуска: комнаты с владельцем и вместимостью, их последние
+// сообщения и закреплённые имена с токенами. Пишется фоновым потоком во временный файл, который
+// затем одним переименованием заменяет прежний. Циклы событий не останавливаются: комнаты
+// обходятся так же, как их обходит LIST, история копируется ссылками под коротким замком комнаты.
+// Файл - поток записей с байтом-тегом, поэтому загрузка идёт одним проходом без индекса.
+// Владелец и вместимость почти у всех комнат одинаковые и пишутся отдельной записью OWNER,
+// только когда меняются, а ROOM несёт лишь имя и историю
+public class StateSnapshot {
+    private static final int MAGIC = 0x43485331; // "CHS1"
+    private static final int VERSION = 1;
+    private static final int END = 0;
+    private static final int ROOM = 1;
+    private static final int SESSION = 2;
+    private static final int OWNER = 3;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final PooledBuffer[] NO_HISTORY = new PooledBuffer[0];
+
+    private final ClientManager clientManager;
+    private final EventLog eventLog;
+    private final Path path;
+    private final long intervalMillis;
+    private final long sessionResumeMillis;
+    private volatile boolean running;
+
+    public StateSnapshot(ClientManager clientManager, ServerConfig config) {
+        this.clientManager = clientManager;
+        this.eventLog = clientManager.getEventLog();
+        this.path = Paths.get(config.getSnapshotFile());
+        this.intervalMillis = config.getSnapshotIntervalMillis();
+        this.sessionResumeMillis = config.getSessionResumeMillis();
+    }
+
+    public void start() {
+        if (intervalMillis <= 0) {
+            return;
+        }
+        running = true;
+        Thread writer = new Thread(this::runWriter, "chat-snapshot");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Без прерывания потока: прерванная запись закрыла бы канал файла на середине
+    public void stop() {
+        running = false;
+    }
+
+    private void runWriter() {
+        while (running) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (running) {
+                write();
+            }
+        }
+    }
+
+    // Последний снимок пишет хук завершения, возможно одновременно с фоновым потоком
+    public synchronized void write() {
+        long start = System.nanoTime();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            int rooms;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+                rooms = writeTo(out);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            eventLog.log(EventType.SNAPSHOT_WRITTEN, path, millisSince(start), rooms);
+        } catch (IOException e) {
+            eventLog.log(EventType.SNAPSHOT_ERROR, path, e.toString());
+        }
+    }
+
+    private int writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+
+        byte[] scratch = new byte[BUFFER_SIZE];
+        int rooms = 0;
+        String owner = null;
+        int maxMembers = -1;
+        for (ChatRoom room : clientManager.getRoomDirectory().getRooms()) {
+            if (!room.getOwner().equals(owner) || room.getMaxMembers() != maxMembers) {
+                owner = room.getOwner();
+                maxMembers = room.getMaxMembers();
+                out.writeByte(OWNER);
+                out.writeUTF(owner);
+                out.writeInt(maxMembers);
+            }
+            out.writeByte(ROOM);
+            out.writeUTF(room.getName());
+
+            PooledBuffer[] frames = room.getHistory().snapshot();
+            try {
+                out.writeInt(frames.length);
+                for (PooledBuffer frame : frames) {
+                    scratch = writeFrame(out, frame.buffer().duplicate(), scratch);
+                }
+            } finally {
+                for (PooledBuffer frame : frames) {
+                    frame.release();
+                }
+            }
+            rooms++;
+        }
+
+        long now = System.currentTimeMillis();
+        for (SessionRecord record : clientManager.getSessionRecords()) {
+            if (record.isExpired(now, sessionResumeMillis)) {
+                continue;
+            }
+            out.writeByte(SESSION);
+            out.writeUTF(record.getToken());
+            out.writeUTF(record.getUsername());
+            out.writeUTF(orEmpty(record.getColor()));
+            out.writeUTF(orEmpty(record.getRoom()));
+        }
+        out.writeByte(END);
+        return rooms;
+    }
+
+    // Буферы пула бывают прямыми, поэтому байты идут через общий массив
+    private static byte[] writeFrame(DataOutputStream out, ByteBuffer frame, byte[] scratch) throws IOException {
+        int length = frame.remaining();
+        out.writeInt(length);
+        if (frame.hasArray()) {
+            out.write(frame.array(), frame.arrayOffset() + frame.position(), length);
+            return scratch;
+        }
+        if (scratch.length < length) {
+            scratch = new byte[length];
+        }
+        frame.get(scratch, 0, length);
+        out.write(scratch, 0, length);
+        return scratch;
+    }
+
+    // Вызывается до открытия журнала сообщений и кластера; false - снимка нет или он не прочитан
+    public boolean load() {
+        if (!Files.exists(path)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        int rooms = 0;
+        List<ChatRoom> restored = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("неизвестный формат файла");
+            }
+            in.readLong();
+
+            long now = System.currentTimeMillis();
+            String owner = null;
+            int maxMembers = 0;
+            while (true) {
+                int tag = in.readUnsignedByte();
+                if (tag == END) {
+                    break;
+                }
+                if (tag == OWNER) {
+                    owner = in.readUTF();
+                    maxMembers = in.readInt();
+                } else if (tag == ROOM && owner != null) {
+                    ChatRoom room = clientManager.restoreRoom(in.readUTF(), owner, maxMembers, readHistory(in));
+                    if (room != null) {
+                        restored.add(room);
+                    }
+                    rooms++;
+                } else if (tag == SESSION) {
+                    String token = in.readUTF();
+                    String username = in.readUTF();
+                    String color = in.readUTF();
+                    String room = in.readUTF();
+                    clientManager.restoreSession(token, username, color, room.isEmpty() ? null : room, now);
+                } else {
+                    throw new IOException("повреждённая запись: " + tag);
+                }
+            }
+        } catch (IOException e) {
+            eventLog.log(EventType.SNAPSHOT_ERROR, path, e.toString());
+            return false;
+        } finally {
+            // Комнаты, прочитанные до ошибки, уже есть в ClientManager и должны быть видны в LIST
+            clientManager.restoreDirectory(restored);
+        }
+        eventLog.log(EventType.SNAPSHOT_LOADED, path, millisSince(start), rooms);
+        return true;
+    }
+
+    private static PooledBuffer[] readHistory(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count == 0) {
+            return NO_HISTORY;
+        }
+        PooledBuffer[] frames = new PooledBuffer[count];
+        for (int i = 0; i < count; i++) {
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            frames[i] = PooledBuffer.unpooled(ByteBuffer.wrap(data));
+        }
+        return frames;
+    }
+
+    private static String orEmpty(String value) {
+        return value == null ? "" : value;
+    }
+
+    private static String millisSince(long startNanos) {
+        return String.valueOf((System.nanoTime() - startNanos) / 1_000_000);
+    }
+}
@@ -0,0 +1,85 @@
+package org.example;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Хешированное колесо таймеров: постановка и срабатывание за O(1), без потока на таймер.
+// Колесо крутит один поток - тот, что вызывает advance (в режиме селектора это цикл событий
+// с его select(100)); schedule можно вызывать из любого потока
+public class TimerWheel {
+    private static final class Timeout {
+        final long deadlineMillis;
+        final Runnable task;
+        long rounds;
+        Timeout next;
+
+        Timeout(long deadlineMillis, Runnable task) {
+            this.deadlineMillis = deadlineMillis;
+            this.task = task;
+        }
+    }
+
+    private final long tickMillis;
+    private final Timeout[] buckets;
+    private final int mask;
+    private final long startMillis;
+    private final ConcurrentLinkedQueue<Timeout> incoming;
+    private long currentTick;
+
+    public TimerWheel(long tickMillis, int wheelSize) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Размер колеса должен быть степенью двойки: " + wheelSize);
+        }
+        this.tickMillis = tickMillis;
+        this.buckets = new Timeout[wheelSize];
+        this.mask = wheelSize - 1;
+        this.startMillis = System.currentTimeMillis();
+        this.incoming = new ConcurrentLinkedQueue<>();
+    }
+
+    // Точность - один тик: задача выполнится не раньше delayMillis и не позже delayMillis + тик
+    public void schedule(long delayMillis, Runnable task) {
+        incoming.add(new Timeout(System.currentTimeMillis() + Math.max(delayMillis, 0), task));
+    }
+
+    // Выполняет все задачи, срок которых наступил к nowMillis; только из потока колеса
+    public void advance(long nowMillis) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        transferIncoming();
+        while (currentTick < targetTick) {
+            currentTick++;
+            expire(currentTick & mask);
+            // Задачи из expire могли поставить новые таймеры
+            transferIncoming();
+        }
+    }
+
+    private void transferIncoming() {
+        Timeout timeout;
+        while ((timeout = incoming.poll()) != null) {
+            long tick = (timeout.deadlineMillis - startMillis + tickMillis - 1) / tickMillis;
+            tick = Math.max(tick, currentTick + 1);
+            timeout.rounds = (tick - currentTick - 1) / buckets.length;
+            int index = (int) (tick & mask);
+            timeout.next = buckets[index];
+            buckets[index] = timeout;
+        }
+    }
+
+    private void expire(long index) {
+        int bucket = (int) index;
+        Timeout timeout = buckets[bucket];
+        buckets[bucket] = null;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.rounds > 0) {
+                timeout.rounds--;
+                timeout.next = buckets[bucket];
+                buckets[bucket] = timeout;
+            } else {
+                timeout.next = null;
+                timeout.task.run();
+            }
+            timeout = next;
+        }
+    }
+}
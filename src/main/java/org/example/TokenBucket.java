@@ -0,0 +1,43 @@
+package org.example;
+
+// Токены копятся со скоростью rate в секунду, но не больше burst. Скорость и запас передаются
+// при каждой проверке, поэтому изменение лимитов на ходу действует сразу
+public class TokenBucket {
+    public static final long REJECTED = -1;
+
+    private double tokens;
+    private long lastRefillNanos;
+    private boolean started;
+
+    // 0 - токен был; > 0 - взят в долг, столько наносекунд до погашения; REJECTED - отказ.
+    // В долг берём только при borrow и не глубже burst
+    public synchronized long acquire(double rate, int burst, long nowNanos, boolean borrow) {
+        if (rate <= 0) {
+            return 0;
+        }
+        if (!started) {
+            started = true;
+            tokens = burst;
+        } else {
+            tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * rate / 1_000_000_000L);
+        }
+        lastRefillNanos = nowNanos;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        if (!borrow || tokens - 1 < -burst) {
+            return REJECTED;
+        }
+        tokens -= 1;
+        return (long) (-tokens / rate * 1_000_000_000L);
+    }
+
+    // Вернуть токен (или долг), взятый последним acquire
+    public synchronized void refund() {
+        if (started) {
+            tokens += 1;
+        }
+    }
+}
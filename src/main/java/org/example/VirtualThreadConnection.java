@@ -0,0 +1,198 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Соединение в режиме виртуальных потоков: один поток читает и обрабатывает команды,
+// второй отправляет накопленные кадры; медленный получатель задерживает только свой поток записи
+public class VirtualThreadConnection implements SessionOwner {
+    private final SocketChannel channel;
+    private final ClientManager clientManager;
+    private final CommandProcessor processor;
+    private final ServerConfig config;
+    private final HeartbeatMonitor heartbeat;
+    private final ReentrantLock lock;
+    private final Condition pending;
+    private ClientSession session;
+    private boolean open;
+
+    public VirtualThreadConnection(SocketChannel channel, ClientManager clientManager, CommandProcessor processor,
+                                   ServerConfig config, HeartbeatMonitor heartbeat) {
+        this.channel = channel;
+        this.clientManager = clientManager;
+        this.processor = processor;
+        this.config = config;
+        this.heartbeat = heartbeat;
+        this.lock = new ReentrantLock();
+        this.pending = lock.newCondition();
+        this.open = true;
+    }
+
+    public void run() {
+        session = new ClientSession(channel, this,
+                new ProtocolDecoder(config.getMaxFrameSize(), clientManager.getBufferPool()), clientManager.createOutboundQueue());
+        clientManager.addClient(session);
+        clientManager.sendToClient(session, "OK:Подключено к серверу");
+        clientManager.getEventLog().log(EventType.CLIENT_CONNECTED, clientManager.getClientCount());
+        heartbeat.watch(session);
+
+        Thread.ofVirtual().name("chat-writer").start(this::writeLoop);
+
+        PooledBuffer readBuffer = clientManager.getBufferPool().acquire(config.getBufferSize());
+        ByteBuffer buffer = readBuffer.buffer();
+        MessageHandler dispatcher = msg -> processor.handleMessage(session, msg);
+        try {
+            while (channel.read(buffer) != -1) {
+                session.touch(System.currentTimeMillis());
+                session.addBytesIn(buffer.position());
+                clientManager.getMetrics().addBytesIn(buffer.position());
+                buffer.flip();
+                session.getDecoder().decode(buffer, dispatcher);
+                buffer.clear();
+
+                // Клиент в долгу по лимиту: поток соединения просто не читает, дальше ждёт TCP
+                long pause = session.takeReadPauseNanos();
+                if (pause > 0) {
+                    Thread.sleep(pause / 1_000_000, (int) (pause % 1_000_000));
+                }
+                clientManager.evictIdle();
+            }
+        } catch (FrameTooLongException | CorruptFrameException e) {
+            clientManager.sendToClient(session, "ERROR:" + e.getMessage());
+        } catch (IOException | InterruptedException ignored) {
+        } finally {
+            readBuffer.release();
+            session.getDecoder().release();
+        }
+
+        processor.notifyLeaving(session);
+        processor.disconnect(session);
+        close();
+    }
+
+    @Override
+    public boolean inEventLoop() {
+        return true;
+    }
+
+    @Override
+    public void send(ClientSession client, PooledBuffer frame) {
+        lock.lock();
+        try {
+            if (!open) {
+                frame.release();
+                return;
+            }
+            if (client.getOutbound().offer(frame)) {
+                clientManager.getMetrics().frameOut();
+                pending.signal();
+            } else {
+                clientManager.getMetrics().frameDropped();
+                if (config.getSlowConsumerPolicy() == SlowConsumerPolicy.DISCONNECT && channel.isOpen()) {
+                    clientManager.getEventLog().log(EventType.SLOW_CONSUMER, client.getUsername());
+                    closeChannel();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void send(List<ClientSession> clients, PooledBuffer frame) {
+        for (ClientSession client : clients) {
+            send(client, frame);
+        }
+    }
+
+    // Закрытый канал прерывает блокирующее чтение, и поток соединения проходит обычное отключение
+    @Override
+    public void close(ClientSession client) {
+        closeChannel();
+    }
+
+    private void writeLoop() {
+        ByteBuffer[] gather = new ByteBuffer[OutboundQueue.MAX_GATHER];
+        PooledBuffer[] owners = new PooledBuffer[OutboundQueue.MAX_GATHER];
+        OutboundQueue queue = session.getOutbound();
+
+        try {
+            while (true) {
+                int count;
+                lock.lock();
+                try {
+                    while (open && queue.isEmpty()) {
+                        pending.await();
+                    }
+                    if (queue.isEmpty()) {
+                        return;
+                    }
+                    count = queue.drain(gather, owners);
+                } finally {
+                    lock.unlock();
+                }
+
+                long total = 0;
+                for (int i = 0; i < count; i++) {
+                    total += gather[i].remaining();
+                }
+                try {
+                    long written = 0;
+                    while (written < total) {
+                        written += channel.write(gather, 0, count);
+                    }
+                } finally {
+                    for (int i = 0; i < count; i++) {
+                        owners[i].release();
+                    }
+                    Arrays.fill(gather, 0, count, null);
+                    Arrays.fill(owners, 0, count, null);
+                }
+                session.addBytesOut((int) total);
+                clientManager.getMetrics().addBytesOut(total);
+
+                lock.lock();
+                try {
+                    queue.release((int) total);
+                    clientManager.getMetrics().outboundQueue(queue.getPendingBytes());
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } catch (IOException | InterruptedException ignored) {
+        } finally {
+            // Больше никто не отправит: новые кадры освобождаются в send, оставшиеся - здесь
+            lock.lock();
+            try {
+                open = false;
+                queue.clear();
+            } finally {
+                lock.unlock();
+            }
+            closeChannel();
+        }
+    }
+
+    private void close() {
+        lock.lock();
+        try {
+            open = false;
+            pending.signal();
+        } finally {
+            lock.unlock();
+        }
+        // Канал закроет поток записи, когда отправит то, что уже в очереди (например, ERROR)
+    }
+
+    private void closeChannel() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+public class VirtualThreadServer {
+    private final ServerSocketChannel serverChannel;
+    private final ClientManager clientManager;
+    private final CommandProcessor processor;
+    private final ServerConfig config;
+    private final TimerWheel timers;
+    private final HeartbeatMonitor heartbeat;
+
+    public VirtualThreadServer(ServerSocketChannel serverChannel, ClientManager clientManager, CommandProcessor processor, ServerConfig config) {
+        this.serverChannel = serverChannel;
+        this.clientManager = clientManager;
+        this.processor = processor;
+        this.config = config;
+        this.timers = new TimerWheel(ServerEventHandler.TICK_MILLIS, ServerEventHandler.WHEEL_SIZE);
+        this.heartbeat = new HeartbeatMonitor(timers, clientManager, config);
+    }
+
+    public void acceptClients() throws IOException {
+        serverChannel.configureBlocking(true);
+        // Цикла событий здесь нет, колесо крутит отдельный поток с тем же шагом
+        Thread.ofVirtual().name("chat-timers").start(this::runTimers);
+
+        while (serverChannel.isOpen()) {
+            SocketChannel clientChannel = serverChannel.accept();
+            if (!clientManager.getAdmission().admit(clientChannel)) {
+                continue;
+            }
+            VirtualThreadConnection connection = new VirtualThreadConnection(clientChannel, clientManager, processor, config, heartbeat);
+            Thread.ofVirtual().name("chat-conn").start(connection::run);
+        }
+    }
+
+    private void runTimers() {
+        try {
+            while (serverChannel.isOpen()) {
+                Thread.sleep(ServerEventHandler.TICK_MILLIS);
+                timers.advance(System.currentTimeMillis());
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+}